@@ -0,0 +1,43 @@
+package org.eduardomango.authmicroservice.benchmarks;
+
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.services.impl.AuthorityResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authority resolution of a user, done on every authenticated request and every token issue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthoritiesBenchmark {
+
+    private final AuthorityResolver authorityResolver = new AuthorityResolver();
+    private CredentialsEntity user;
+
+    @Setup
+    public void setUp() {
+        user = BenchmarkFixtures.customer();
+    }
+
+    @Benchmark
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorityResolver.resolve(user.getProfile(), user.getRoles());
+    }
+}
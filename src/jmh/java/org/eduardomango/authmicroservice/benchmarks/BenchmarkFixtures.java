@@ -0,0 +1,112 @@
+package org.eduardomango.authmicroservice.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eduardomango.authmicroservice.config.JwtKeyProvider;
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.Enum.UserPermit;
+import org.eduardomango.authmicroservice.models.Enum.UserProfile;
+import org.eduardomango.authmicroservice.models.Enum.UserRole;
+import org.eduardomango.authmicroservice.models.PermitEntity;
+import org.eduardomango.authmicroservice.models.ProfileEntity;
+import org.eduardomango.authmicroservice.models.RoleEntity;
+import org.eduardomango.authmicroservice.services.impl.AuthMetrics;
+import org.eduardomango.authmicroservice.services.impl.JwtServiceImpl;
+import org.eduardomango.authmicroservice.services.impl.VerifiedTokenCache;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Shared setup of the benchmarks, builds the services without a Spring context or a database.
+ */
+final class BenchmarkFixtures {
+
+    static final long ACCESS_TOKEN_EXPIRATION = 15 * 60 * 1000L;
+    static final long REFRESH_TOKEN_EXPIRATION = 7 * 24 * 60 * 60 * 1000L;
+
+    private BenchmarkFixtures() {
+    }
+
+    static KeyPair rsaKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Builds a JwtServiceImpl signing with a fresh RSA key pair
+     *
+     * @param cacheVerifiedTokens false to verify the signature on every call
+     * @return the service
+     */
+    static JwtServiceImpl jwtService(boolean cacheVerifiedTokens) {
+        return jwtService(cacheVerifiedTokens, metrics());
+    }
+
+    /** Builds a JwtServiceImpl signing with a fresh RSA key pair
+     *
+     * @param cacheVerifiedTokens false to verify the signature on every call
+     * @param metrics timers of the verifications and signatures
+     * @return the service
+     */
+    static JwtServiceImpl jwtService(boolean cacheVerifiedTokens, AuthMetrics metrics) {
+        KeyPair keyPair = rsaKeyPair();
+        VerifiedTokenCache cache = new VerifiedTokenCache(cacheVerifiedTokens ? 10_000 : 0, Duration.ofMinutes(5));
+        JwtServiceImpl jwtService = new JwtServiceImpl(new JwtKeyProvider(keyPair.getPrivate(), keyPair.getPublic()), cache, metrics);
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", ACCESS_TOKEN_EXPIRATION);
+        ReflectionTestUtils.setField(jwtService, "refreshTokenExpiration", REFRESH_TOKEN_EXPIRATION);
+        return jwtService;
+    }
+
+    /** Stage timers registered in a simple registry, as recorded in production */
+    static AuthMetrics metrics() {
+        return new AuthMetrics(new SimpleMeterRegistry());
+    }
+
+    /** Builds a customer with the same profile, roles and permits the DataLoader creates,
+     * plus a direct role on top of the profile
+     *
+     * @return the customer credentials
+     */
+    static CredentialsEntity customer() {
+        RoleEntity customerRole = new RoleEntity(UserRole.ROLE_CUSTOMER);
+        customerRole.addPermit(permit(UserPermit.USER_READ_SELF));
+        customerRole.addPermit(permit(UserPermit.USER_UPDATE));
+        customerRole.addPermit(permit(UserPermit.PRODUCT_READ));
+        customerRole.addPermit(permit(UserPermit.ORDER_CREATE));
+        customerRole.addPermit(permit(UserPermit.ORDER_READ));
+        customerRole.addPermit(permit(UserPermit.ORDER_UPDATE));
+        customerRole.addPermit(permit(UserPermit.ORDER_DELETE));
+
+        RoleEntity contentModerator = new RoleEntity(UserRole.ROLE_CONTENT_MODERATOR);
+        contentModerator.addPermit(permit(UserPermit.CONTENT_CREATE));
+        contentModerator.addPermit(permit(UserPermit.CONTENT_READ));
+
+        ProfileEntity profile = new ProfileEntity(UserProfile.CUSTOMER);
+        profile.addRole(customerRole);
+
+        CredentialsEntity credentials = CredentialsEntity.builder()
+                .username("customer")
+                .email("customer@email.com")
+                .password("$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z3mbO1xUrVHzS1xW1F8W3S5a")
+                .profile(profile)
+                .createdAt(LocalDateTime.now())
+                .build();
+        credentials.getRoles().add(contentModerator);
+        return credentials;
+    }
+
+    private static PermitEntity permit(UserPermit permit) {
+        return PermitEntity.builder()
+                .permit(permit)
+                .description(permit.getCode())
+                .build();
+    }
+}
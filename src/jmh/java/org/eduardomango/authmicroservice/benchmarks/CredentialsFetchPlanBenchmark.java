@@ -0,0 +1,218 @@
+package org.eduardomango.authmicroservice.benchmarks;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import ch.qos.logback.classic.Level;
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.PermitEntity;
+import org.eduardomango.authmicroservice.models.ProfileEntity;
+import org.eduardomango.authmicroservice.models.RefreshTokenEntity;
+import org.eduardomango.authmicroservice.models.RoleEntity;
+import org.eduardomango.authmicroservice.repositories.CredentialsRepository;
+import org.eduardomango.authmicroservice.repositories.RefreshTokenRepository;
+import org.eduardomango.authmicroservice.services.impl.TokenDigests;
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.temporal.Temporal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Fetch plans of the credentials load paths against an in-memory H2 database, with the second-level cache on
+ * as in production. Besides the time of each plan, the setup prints the JDBC statements, rows and bytes
+ * each plan reads, counted on the result sets Hibernate consumes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CredentialsFetchPlanBenchmark {
+
+    private static long statements;
+    private static long rows;
+    private static long bytes;
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager entityManager;
+    private CredentialsRepository credentialsRepository;
+    private RefreshTokenRepository refreshTokenRepository;
+    private byte[] refreshTokenHash;
+
+    @Setup
+    public void setUp() {
+        // Without a Spring Boot logging setup Logback logs every Hibernate debug message
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:credentials;DB_CLOSE_DELAY=-1");
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(CredentialsEntity.class)
+                .addAnnotatedClass(ProfileEntity.class)
+                .addAnnotatedClass(RoleEntity.class)
+                .addAnnotatedClass(PermitEntity.class)
+                .addAnnotatedClass(RefreshTokenEntity.class)
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true")
+                .setProperty(AvailableSettings.USE_QUERY_CACHE, "true")
+                .setProperty(AvailableSettings.CACHE_REGION_FACTORY, "jcache")
+                .setProperty("hibernate.javax.cache.provider", "com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider")
+                .setProperty("hibernate.javax.cache.missing_cache_strategy", "create");
+        configuration.getProperties().put(AvailableSettings.JAKARTA_NON_JTA_DATASOURCE, counting(h2));
+        entityManagerFactory = configuration.buildSessionFactory();
+
+        CredentialsEntity customer = BenchmarkFixtures.customer();
+        refreshTokenHash = TokenDigests.sha256(BenchmarkFixtures.jwtService(true).generateRefreshToken(customer));
+        EntityManager seed = entityManagerFactory.createEntityManager();
+        seed.getTransaction().begin();
+        seed.persist(RefreshTokenEntity.builder()
+                .tokenHash(refreshTokenHash)
+                .credentials(seed.merge(customer))
+                .familyId(UUID.randomUUID())
+                .createdAt(Instant.now())
+                .expiresAt(Instant.now().plusSeconds(3600))
+                .build());
+        seed.getTransaction().commit();
+        seed.close();
+
+        // Non transactional shared entity manager: every call runs in a new persistence context, like a request
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        JpaRepositoryFactory repositoryFactory = new JpaRepositoryFactory(entityManager);
+        credentialsRepository = repositoryFactory.getRepository(CredentialsRepository.class);
+        refreshTokenRepository = repositoryFactory.getRepository(RefreshTokenRepository.class);
+        report();
+    }
+
+    @TearDown
+    public void tearDown() {
+        entityManagerFactory.close();
+    }
+
+    /**
+     * The fetch plan of every load before the fetch plans were split: the whole profile, role and permit tree
+     * plus every column of the credentials.
+     */
+    @Benchmark
+    public CredentialsEntity eagerTree() {
+        return entityManager.createQuery("select c from CredentialsEntity c where c.username = :username", CredentialsEntity.class)
+                .setParameter("username", "customer")
+                .setHint("jakarta.persistence.fetchgraph", entityManager.getEntityGraph(CredentialsEntity.FULL_GRAPH))
+                .getSingleResult();
+    }
+
+    @Benchmark
+    public Object loginProjection() {
+        return credentialsRepository.findLoginByUsername("customer").orElseThrow();
+    }
+
+    @Benchmark
+    public Object refreshProjection() {
+        return refreshTokenRepository.findCredentialsByTokenHash(refreshTokenHash).orElseThrow();
+    }
+
+    @Benchmark
+    public Object authoritiesGraph() {
+        return credentialsRepository.findWithAuthoritiesByUsername("customer").orElseThrow().getAuthorities();
+    }
+
+    private void report() {
+        Map<String, Supplier<Object>> plans = new LinkedHashMap<>();
+        plans.put("eagerTree", this::eagerTree);
+        plans.put("loginProjection", this::loginProjection);
+        plans.put("refreshProjection", this::refreshProjection);
+        plans.put("authoritiesGraph", this::authoritiesGraph);
+        plans.values().forEach(Supplier::get); // Warms up the second-level cache
+
+        System.out.printf("%n%-20s %12s %8s %8s%n", "Fetch plan", "statements", "rows", "bytes");
+        plans.forEach((name, plan) -> {
+            statements = 0;
+            rows = 0;
+            bytes = 0;
+            plan.get();
+            System.out.printf("%-20s %12d %8d %8d%n", name, statements, rows, bytes);
+        });
+    }
+
+    private static DataSource counting(DataSource dataSource) {
+        return proxy(DataSource.class, dataSource);
+    }
+
+    /**
+     * Proxies the JDBC objects down to the result sets, counting the statements executed, the rows read
+     * and the bytes of the column values read.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Connection connection) {
+                return proxy(Connection.class, connection);
+            }
+            if (result instanceof PreparedStatement statement) {
+                return proxy(PreparedStatement.class, statement);
+            }
+            if (result instanceof ResultSet resultSet) {
+                statements++;
+                return proxy(ResultSet.class, resultSet);
+            }
+            if (target instanceof ResultSet) {
+                if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                    rows++;
+                } else if (method.getName().startsWith("get") && args != null && args.length > 0) {
+                    bytes += sizeOf(result);
+                }
+            }
+            return result;
+        });
+    }
+
+    private static int sizeOf(Object value) {
+        if (value instanceof String string) {
+            return string.getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (value instanceof byte[] array) {
+            return array.length;
+        }
+        if (value instanceof Long || value instanceof Double || value instanceof Temporal || value instanceof java.util.Date) {
+            return 8;
+        }
+        if (value instanceof Number) {
+            return 4;
+        }
+        return value == null ? 0 : 1;
+    }
+}
@@ -0,0 +1,94 @@
+package org.eduardomango.authmicroservice.benchmarks;
+
+import jakarta.servlet.ServletException;
+import org.eduardomango.authmicroservice.config.FlightRecordings;
+import org.eduardomango.authmicroservice.config.JwtAuthenticationFilter;
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.services.impl.AuthMetrics;
+import org.eduardomango.authmicroservice.services.impl.JwtServiceImpl;
+import org.eduardomango.authmicroservice.services.impl.TokenRevocationIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Cost of the auth JFR events on the cheapest request path (a bearer request with a cached token and a stateless
+ * principal) and on the signing of a token: without any recording, under the continuous recording, where the events
+ * are timed but below its threshold, and under an on-demand recording, where every event is hashed and written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlightRecorderBenchmark {
+
+    @Param({"none", "continuous", "on-demand"})
+    public String recording;
+
+    private FlightRecordings flightRecordings;
+    private JwtServiceImpl jwtService;
+    private JwtAuthenticationFilter filter;
+    private CredentialsEntity user;
+    private String authorizationHeader;
+
+    @Setup
+    public void setUp() {
+        AuthMetrics metrics = BenchmarkFixtures.metrics();
+        jwtService = BenchmarkFixtures.jwtService(true, metrics);
+        user = BenchmarkFixtures.customer();
+        filter = new JwtAuthenticationFilter(mock(UserDetailsService.class), jwtService,
+                new TokenRevocationIndex(BenchmarkFixtures.ACCESS_TOKEN_EXPIRATION, Duration.ofSeconds(1)), metrics, true);
+        authorizationHeader = "Bearer " + jwtService.generateToken(user);
+
+        flightRecordings = new FlightRecordings(recording.equals("continuous"), Duration.ofMinutes(5),
+                DataSize.ofMegabytes(64), Duration.ofMillis(5), Duration.ofMinutes(10), DataSize.ofMegabytes(256));
+        flightRecordings.start();
+        if (recording.equals("on-demand")) {
+            flightRecordings.startRecording(null);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        flightRecordings.stop();
+    }
+
+    @Benchmark
+    public Authentication authenticateRequest() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/validate-token");
+        request.addHeader("Authorization", authorizationHeader);
+
+        SecurityContextHolder.clearContext();
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    @Benchmark
+    public String signToken() {
+        return jwtService.generateToken(user);
+    }
+}
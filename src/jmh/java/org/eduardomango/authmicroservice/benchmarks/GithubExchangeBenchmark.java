@@ -0,0 +1,159 @@
+package org.eduardomango.authmicroservice.benchmarks;
+
+import ch.qos.logback.classic.Level;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.eduardomango.authmicroservice.config.GithubClientConfig;
+import org.eduardomango.authmicroservice.models.auth.AuthResponse;
+import org.eduardomango.authmicroservice.models.auth.TokenRequest;
+import org.eduardomango.authmicroservice.repositories.CredentialsRepository;
+import org.eduardomango.authmicroservice.repositories.ProfileRepository;
+import org.eduardomango.authmicroservice.services.JpaUserDetailsService;
+import org.eduardomango.authmicroservice.services.OAuth2ServiceImpl;
+import org.eduardomango.authmicroservice.services.impl.AuthorityResolver;
+import org.eduardomango.authmicroservice.services.impl.GithubUserCache;
+import org.eduardomango.authmicroservice.services.interfaces.AuthService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Load test of the GitHub token exchange: a burst of exchanges of distinct tokens against a local GitHub stub
+ * answering after a fixed latency. The platform mode runs them on a pool of 200 threads, like the default Tomcat
+ * request threads waiting for GitHub, the virtual mode through the asynchronous exchange on virtual threads.
+ * Signing and the database are stubbed out, only the waiting for GitHub is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GithubExchangeBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"400"})
+    public int exchanges;
+
+    /** Latency of each GitHub call, long enough for the waiting to dominate the CPU time of the calls */
+    @Param({"1000"})
+    public long latencyMillis;
+
+    private final AtomicLong tokens = new AtomicLong();
+    private HttpServer githubStub;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private ExecutorService githubExecutor;
+    private ExecutorService requestThreads;
+    private OAuth2ServiceImpl oauth2Service;
+
+    @Setup
+    public void setUp() throws IOException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        // The stub keeps at most 200 idle keep-alive connections by default and resets the others
+        System.setProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(4 * exchanges));
+        githubStub = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+        githubStub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        githubStub.createContext("/user", exchange -> {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String json = exchange.getRequestURI().getPath().equals("/user/emails") ? "[]"
+                    : "{\"id\":1,\"login\":\"octocat\",\"email\":\"octocat@example.com\",\"name\":\"Octocat\"}";
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        githubStub.start();
+
+        // A pool large enough for the whole burst, so only the threads bound the exchanges in flight
+        GithubClientConfig config = new GithubClientConfig();
+        connectionManager = config.githubConnectionManager(2 * exchanges, 2 * exchanges,
+                Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ofMinutes(5));
+        githubExecutor = config.githubExecutor();
+        requestThreads = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+
+        CredentialsRepository credentialsRepository = stub(CredentialsRepository.class,
+                method -> method.equals("findWithAuthoritiesByUsername") ? Optional.of(BenchmarkFixtures.customer()) : null);
+        oauth2Service = new OAuth2ServiceImpl(
+                new JpaUserDetailsService(credentialsRepository, stub(ProfileRepository.class, method -> null),
+                        new AuthorityResolver()),
+                stub(AuthService.class, method -> new AuthResponse("access-token", "refresh-token")),
+                config.githubRestTemplate(new RestTemplateBuilder(), connectionManager,
+                        "http://localhost:" + githubStub.getAddress().getPort(),
+                        Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ofSeconds(30)),
+                new GithubUserCache(0, Duration.ofSeconds(30)),
+                BenchmarkFixtures.metrics(), githubExecutor, Duration.ofSeconds(10), true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestThreads.shutdownNow();
+        githubExecutor.close();
+        connectionManager.close();
+        githubStub.stop(0);
+    }
+
+    @Benchmark
+    public int burst() {
+        List<CompletableFuture<AuthResponse>> responses = new ArrayList<>(exchanges);
+        for (int i = 0; i < exchanges; i++) {
+            TokenRequest request = new TokenRequest("token-" + tokens.incrementAndGet());
+            responses.add(mode.equals("virtual")
+                    ? oauth2Service.exchangeGithubTokenAsync(request)
+                    : CompletableFuture.supplyAsync(() -> oauth2Service.exchangeGithubToken(request), requestThreads));
+        }
+        int exchanged = 0;
+        for (CompletableFuture<AuthResponse> response : responses) {
+            if (response.join() != null) {
+                exchanged++;
+            }
+        }
+        if (exchanged != exchanges) {
+            throw new IllegalStateException("Only " + exchanged + " of " + exchanges + " exchanges succeeded");
+        }
+        return exchanged;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Function<String, Object> answer) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> answer.apply(method.getName()));
+    }
+}
@@ -0,0 +1,84 @@
+package org.eduardomango.authmicroservice.benchmarks;
+
+import jakarta.servlet.ServletException;
+import org.eduardomango.authmicroservice.config.JwtAuthenticationFilter;
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.services.impl.JwtServiceImpl;
+import org.eduardomango.authmicroservice.services.impl.TokenRevocationIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A bearer request going through JwtAuthenticationFilter end to end,
+ * with the user lookup served by a mocked UserDetailsService.
+ * The revocation index holds 10000 revoked tokens of other users, so the revocation check is a real lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    @Param({"true", "false"})
+    public boolean statelessPrincipal;
+
+    private JwtAuthenticationFilter filter;
+    private String authorizationHeader;
+
+    @Setup
+    public void setUp() {
+        JwtServiceImpl jwtService = BenchmarkFixtures.jwtService(cached);
+        CredentialsEntity user = BenchmarkFixtures.customer();
+
+        UserDetailsService userDetailsService = mock(UserDetailsService.class);
+        when(userDetailsService.loadUserByUsername(user.getUsername())).thenReturn(user);
+
+        TokenRevocationIndex revocationIndex = new TokenRevocationIndex(BenchmarkFixtures.ACCESS_TOKEN_EXPIRATION, Duration.ofSeconds(1));
+        for (int i = 0; i < 10_000; i++) {
+            CredentialsEntity other = BenchmarkFixtures.customer();
+            other.setUsername("revoked" + i);
+            revocationIndex.revoke(jwtService.verify(jwtService.generateToken(other)));
+        }
+
+        filter = new JwtAuthenticationFilter(userDetailsService, jwtService, revocationIndex,
+                BenchmarkFixtures.metrics(), statelessPrincipal);
+        authorizationHeader = "Bearer " + jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public Authentication authenticate() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/validate-token");
+        request.addHeader("Authorization", authorizationHeader);
+
+        SecurityContextHolder.clearContext();
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+}
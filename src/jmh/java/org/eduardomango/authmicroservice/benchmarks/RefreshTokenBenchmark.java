@@ -0,0 +1,70 @@
+package org.eduardomango.authmicroservice.benchmarks;
+
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.auth.RefreshCredentials;
+import org.eduardomango.authmicroservice.repositories.RefreshTokenRepository;
+import org.eduardomango.authmicroservice.services.impl.RefreshTokenServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refresh token issue and check of RefreshTokenServiceImpl in both token formats, without the database:
+ * the repository stores nothing and finds every token, so only the token and digest work is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RefreshTokenBenchmark {
+
+    @Param({"jwt", "opaque"})
+    public String format;
+
+    private RefreshTokenServiceImpl refreshTokenService;
+    private CredentialsEntity user;
+    private String refreshToken;
+
+    @Setup
+    public void setUp() {
+        RefreshCredentials stored = new RefreshCredentials(1L, 1L, UUID.randomUUID(), Instant.MAX, null, 0);
+        RefreshTokenRepository repository = (RefreshTokenRepository) Proxy.newProxyInstance(
+                RefreshTokenRepository.class.getClassLoader(), new Class<?>[]{RefreshTokenRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findCredentialsByTokenHash" -> Optional.of(stored);
+                    case "markRotated" -> 1;
+                    default -> null;
+                });
+        refreshTokenService = new RefreshTokenServiceImpl(repository, BenchmarkFixtures.jwtService(false),
+                TimeUnit.DAYS.toMillis(7), format, Duration.ofSeconds(10));
+        user = BenchmarkFixtures.customer();
+        refreshToken = refreshTokenService.issue(user);
+    }
+
+    @Benchmark
+    public String issue() {
+        return refreshTokenService.issue(user);
+    }
+
+    @Benchmark
+    public boolean check() {
+        return refreshTokenService.find(refreshToken).isPresent() && refreshTokenService.isValid(refreshToken, user);
+    }
+}
@@ -0,0 +1,298 @@
+package org.eduardomango.authmicroservice.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.Filter;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.eduardomango.authmicroservice.config.BoundedPasswordEncoder;
+import org.eduardomango.authmicroservice.config.JwtAuthenticationFilter;
+import org.eduardomango.authmicroservice.controllers.AuthController;
+import org.eduardomango.authmicroservice.controllers.PageController;
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.auth.LoginCredentials;
+import org.eduardomango.authmicroservice.models.auth.RefreshCredentials;
+import org.eduardomango.authmicroservice.repositories.CredentialsRepository;
+import org.eduardomango.authmicroservice.repositories.ProfileRepository;
+import org.eduardomango.authmicroservice.repositories.RefreshTokenRepository;
+import org.eduardomango.authmicroservice.services.JpaUserDetailsService;
+import org.eduardomango.authmicroservice.services.impl.AuthServiceImpl;
+import org.eduardomango.authmicroservice.services.impl.AuthorityResolver;
+import org.eduardomango.authmicroservice.services.impl.JwtServiceImpl;
+import org.eduardomango.authmicroservice.services.impl.RefreshCoalescer;
+import org.eduardomango.authmicroservice.services.impl.RefreshTokenServiceImpl;
+import org.eduardomango.authmicroservice.services.impl.TokenRevocationIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.servlet.context.AnnotationConfigServletWebApplicationContext;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.DelegatingWebMvcConfiguration;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Login, refresh and validate-token requests sent all at once to the controllers and the JWT filter running on an
+ * embedded Tomcat, either on its default pool of 200 platform threads or on virtual threads, as with
+ * spring.threads.virtual.enabled. The repositories answer after a fixed latency while holding one of 20 connections,
+ * like the Hikari pool, and passwords are hashed on the bounded hashing pool with a low BCrypt cost, so waiting for
+ * the database dominates. Each benchmark measures the time until the requests of its endpoint are answered, while the
+ * other two endpoints receive as many requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ServletThreadsBenchmark {
+
+    private static final int DATABASE_CONNECTIONS = 20;
+    private static final String PASSWORD = "password";
+    private static final List<String> ENDPOINTS = List.of("login", "refresh", "validate-token");
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    /** Requests sent to each endpoint */
+    @Param({"200"})
+    public int requests;
+
+    @Param({"50"})
+    public long databaseLatencyMillis;
+
+    private final List<Future<HttpResponse<String>>> background = new ArrayList<>();
+    private Tomcat tomcat;
+    private BoundedPasswordEncoder passwordEncoder;
+    private ExecutorService clients;
+    private HttpClient httpClient;
+    private String baseUrl;
+    private String accessToken;
+
+    @Setup
+    public void setUp() throws IOException, LifecycleException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+        passwordEncoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4),
+                Runtime.getRuntime().availableProcessors(), 3 * requests, Duration.ofSeconds(1), new SimpleMeterRegistry());
+        CredentialsEntity user = BenchmarkFixtures.customer();
+        user.setId(1L);
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+        LoginCredentials login = new LoginCredentials(1L, user.getUsername(), user.getPassword(), 1L);
+
+        Semaphore connections = new Semaphore(DATABASE_CONNECTIONS);
+        CredentialsRepository credentialsRepository = database(CredentialsRepository.class, connections, method -> switch (method) {
+            case "findLoginByUsername" -> Optional.of(login);
+            case "findWithAuthoritiesByUsername", "findWithAuthoritiesById" -> Optional.of(user);
+            default -> null;
+        });
+        // Every refresh token is found unrotated, so each refresh rotates without being coalesced with another
+        RefreshTokenRepository refreshTokenRepository = database(RefreshTokenRepository.class, connections, method -> switch (method) {
+            case "findCredentialsByTokenHash" ->
+                    Optional.of(new RefreshCredentials(1L, 1L, UUID.randomUUID(), Instant.MAX, null, 0));
+            case "markRotated" -> 1;
+            default -> null;
+        });
+        ProfileRepository profileRepository = database(ProfileRepository.class, connections, method -> Optional.empty());
+
+        JwtServiceImpl jwtService = BenchmarkFixtures.jwtService(true);
+        TokenRevocationIndex revocationIndex = new TokenRevocationIndex(BenchmarkFixtures.ACCESS_TOKEN_EXPIRATION, Duration.ofSeconds(1));
+        AuthorityResolver authorityResolver = new AuthorityResolver();
+        JpaUserDetailsService userDetailsService = new JpaUserDetailsService(credentialsRepository, profileRepository, authorityResolver);
+        DaoAuthenticationProvider authenticationProvider = new DaoAuthenticationProvider(passwordEncoder);
+        authenticationProvider.setUserDetailsService(userDetailsService::loadLoginCredentials);
+        AuthServiceImpl authService = new AuthServiceImpl(credentialsRepository, jwtService,
+                new ProviderManager(authenticationProvider), passwordEncoder, profileRepository,
+                new RefreshTokenServiceImpl(refreshTokenRepository, jwtService, BenchmarkFixtures.REFRESH_TOKEN_EXPIRATION,
+                        "opaque", Duration.ofSeconds(10)),
+                new RefreshCoalescer(Duration.ofSeconds(10)), null, authorityResolver, BenchmarkFixtures.metrics());
+        accessToken = jwtService.generateToken(user);
+
+        AnnotationConfigServletWebApplicationContext context = new AnnotationConfigServletWebApplicationContext();
+        context.register(DelegatingWebMvcConfiguration.class);
+        context.registerBean(AuthController.class, () -> new AuthController(authService, null));
+        context.registerBean(PageController.class, () -> new PageController(null));
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat").toString());
+        Connector connector = new Connector();
+        connector.setPort(0);
+        connector.setProperty("acceptCount", String.valueOf(4 * requests));
+        if (threads.equals("virtual")) {
+            // What Spring Boot sets up with spring.threads.virtual.enabled
+            ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(new VirtualThreadExecutor("tomcat-handler-"));
+        }
+        tomcat.setConnector(connector);
+        Context servletContext = tomcat.addContext("", Files.createTempDirectory("docbase").toString());
+        // Spring Security clears the context after each request
+        addFilter(servletContext, "securityContext", (request, response, chain) -> {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                SecurityContextHolder.clearContext();
+            }
+        });
+        addFilter(servletContext, "jwt", new JwtAuthenticationFilter(userDetailsService, jwtService,
+                revocationIndex, BenchmarkFixtures.metrics(), true));
+        Tomcat.addServlet(servletContext, "dispatcher", new DispatcherServlet(context));
+        servletContext.addServletMappingDecoded("/", "dispatcher");
+        tomcat.start();
+        baseUrl = "http://localhost:" + connector.getLocalPort();
+
+        clients = Executors.newVirtualThreadPerTaskExecutor();
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clients)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws LifecycleException {
+        httpClient.close();
+        clients.close();
+        tomcat.stop();
+        tomcat.destroy();
+        passwordEncoder.close();
+    }
+
+    @TearDown(Level.Invocation)
+    public void awaitBackground() {
+        await(background);
+        background.clear();
+    }
+
+    @Benchmark
+    public int login() {
+        return burst("login");
+    }
+
+    @Benchmark
+    public int refresh() {
+        return burst("refresh");
+    }
+
+    @Benchmark
+    public int validateToken() {
+        return burst("validate-token");
+    }
+
+    private int burst(String measuredEndpoint) {
+        List<Future<HttpResponse<String>>> measured = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            for (String endpoint : ENDPOINTS) {
+                HttpRequest request = request(endpoint);
+                Future<HttpResponse<String>> response = clients.submit(
+                        () -> httpClient.send(request, HttpResponse.BodyHandlers.ofString()));
+                (endpoint.equals(measuredEndpoint) ? measured : background).add(response);
+            }
+        }
+        return await(measured);
+    }
+
+    private HttpRequest request(String endpoint) {
+        return switch (endpoint) {
+            case "login" -> post("/auth", "{\"username\":\"customer\",\"password\":\"" + PASSWORD + "\"}");
+            case "refresh" -> post("/auth/refresh", "{\"refreshToken\":\"" + UUID.randomUUID() + "\"}");
+            default -> HttpRequest.newBuilder(URI.create(baseUrl + "/validate-token"))
+                    .header("Authorization", "Bearer " + accessToken)
+                    .timeout(Duration.ofMinutes(1))
+                    .GET()
+                    .build();
+        };
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofMinutes(1))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static int await(List<Future<HttpResponse<String>>> responses) {
+        int answered = 0;
+        for (Future<HttpResponse<String>> future : responses) {
+            HttpResponse<String> response;
+            try {
+                response = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Request failed", e.getCause());
+            }
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(response.request().uri() + " answered " + response.statusCode() + ": " + response.body());
+            }
+            answered++;
+        }
+        return answered;
+    }
+
+    private static void addFilter(Context context, String name, Filter filter) {
+        FilterDef filterDef = new FilterDef();
+        filterDef.setFilterName(name);
+        filterDef.setFilter(filter);
+        context.addFilterDef(filterDef);
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(name);
+        filterMap.addURLPattern("/*");
+        context.addFilterMap(filterMap);
+    }
+
+    /** Stubs a repository whose every call holds one of the database connections for the database latency */
+    @SuppressWarnings("unchecked")
+    private <T> T database(Class<T> type, Semaphore connections, Function<String, Object> answer) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    connections.acquire();
+                    try {
+                        Thread.sleep(databaseLatencyMillis);
+                        return method.getName().equals("save") ? args[0] : answer.apply(method.getName());
+                    } finally {
+                        connections.release();
+                    }
+                });
+    }
+}
@@ -12,7 +12,6 @@ import org.eduardomango.authmicroservice.repositories.CredentialsRepository;
 import org.eduardomango.authmicroservice.repositories.PermitRepository;
 import org.eduardomango.authmicroservice.repositories.ProfileRepository;
 import org.eduardomango.authmicroservice.repositories.RoleRepository;
-import org.eduardomango.authmicroservice.services.impl.JwtServiceImpl;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
@@ -28,15 +27,13 @@ public class DataLoader {
     private final ProfileRepository profileRepository;
     private final PasswordEncoder passwordEncoder;
     private final CredentialsRepository credentialsRepository;
-    private final JwtServiceImpl jwtService;
 
-    public DataLoader(PermitRepository permitRepository, RoleRepository roleRepository, ProfileRepository profileRepository, PasswordEncoder passwordEncoder, CredentialsRepository credentialsRepository, JwtServiceImpl jwtService) {
+    public DataLoader(PermitRepository permitRepository, RoleRepository roleRepository, ProfileRepository profileRepository, PasswordEncoder passwordEncoder, CredentialsRepository credentialsRepository) {
         this.permitRepository = permitRepository;
         this.roleRepository = roleRepository;
         this.profileRepository = profileRepository;
         this.passwordEncoder = passwordEncoder;
         this.credentialsRepository = credentialsRepository;
-        this.jwtService = jwtService;
     }
 
     /**
@@ -256,11 +253,8 @@ public class DataLoader {
             .email("customer@email.com")
             .password(passwordEncoder.encode("customer"))
             .createdAt(LocalDateTime.now())
-            .refreshToken("refresh")
             .build();
 
-    credentialsCustomer.setRefreshToken(jwtService.generateRefreshToken(credentialsCustomer));
-
     credentialsRepository.save(credentialsCustomer);
 
     CredentialsEntity credentialsSeller = CredentialsEntity.builder()
@@ -271,8 +265,6 @@ public class DataLoader {
             .createdAt(LocalDateTime.now())
             .build();
 
-    credentialsSeller.setRefreshToken(jwtService.generateRefreshToken(credentialsSeller));
-
     credentialsRepository.save(credentialsSeller);
     }
 }
@@ -0,0 +1,69 @@
+package org.eduardomango.authmicroservice.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Actuator endpoint of the flight recordings, restricted to admins: GET streams a .jfr dump of the on-demand
+ * recording or of the continuous one, POST starts a bounded recording, optionally for a given duration,
+ * DELETE stops it.
+ */
+@Component
+@Endpoint(id = "flightrecorder")
+public class FlightRecorderEndpoint {
+
+    private final FlightRecordings flightRecordings;
+
+    public FlightRecorderEndpoint(FlightRecordings flightRecordings) {
+        this.flightRecordings = flightRecordings;
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> recording() throws IOException {
+        Path dump = flightRecordings.dump();
+        if (dump == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        return new WebEndpointResponse<>(new TemporaryFileResource(dump), WebEndpointResponse.STATUS_OK);
+    }
+
+    @WriteOperation
+    public Map<String, Object> start(@Nullable Duration duration) {
+        return flightRecordings.startRecording(duration);
+    }
+
+    @DeleteOperation
+    public Map<String, Object> stop() {
+        return flightRecordings.stopRecording();
+    }
+
+    /**
+     * Dump file deleted once it was streamed.
+     */
+    static class TemporaryFileResource extends FileSystemResource {
+
+        TemporaryFileResource(Path file) {
+            super(file);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(getFile().toPath(), StandardOpenOption.DELETE_ON_CLOSE);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.eduardomango.authmicroservice.config;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.eduardomango.authmicroservice.services.impl.AuthenticationEvent;
+import org.eduardomango.authmicroservice.services.impl.PersistenceEvent;
+import org.eduardomango.authmicroservice.services.impl.TokenEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Java Flight Recorder recordings of the process, with the token, authentication and persistence events of the auth
+ * pipeline next to the JVM events.
+ * The continuous recording keeps the last jfr.continuous.max-age of events on disk as a ring buffer, with the default
+ * JFR settings and only the auth events slower than jfr.continuous.event-threshold, so a latency spike can be looked
+ * at after the fact. On demand, a bounded recording with the profile settings and every auth event can be started and
+ * stopped. A dump is the on-demand recording if there is one, the continuous recording otherwise.
+ */
+@Component
+public class FlightRecordings implements SmartLifecycle {
+
+    static final String CONTINUOUS = "auth-continuous";
+    static final String ON_DEMAND = "auth-on-demand";
+    static final List<String> AUTH_EVENTS = List.of(TokenEvent.NAME, AuthenticationEvent.NAME, PersistenceEvent.NAME);
+
+    private static final Logger log = LoggerFactory.getLogger(FlightRecordings.class);
+
+    private final boolean continuousEnabled;
+    private final Duration continuousMaxAge;
+    private final DataSize continuousMaxSize;
+    private final Duration eventThreshold;
+    private final Duration maxDuration;
+    private final DataSize maxSize;
+
+    private Recording continuous;
+    private Recording onDemand;
+
+    public FlightRecordings(@Value("${jfr.continuous.enabled:true}") boolean continuousEnabled,
+                            @Value("${jfr.continuous.max-age:PT15M}") Duration continuousMaxAge,
+                            @Value("${jfr.continuous.max-size:64MB}") DataSize continuousMaxSize,
+                            @Value("${jfr.continuous.event-threshold:PT0.005S}") Duration eventThreshold,
+                            @Value("${jfr.recording.max-duration:PT10M}") Duration maxDuration,
+                            @Value("${jfr.recording.max-size:256MB}") DataSize maxSize) {
+        this.continuousEnabled = continuousEnabled;
+        this.continuousMaxAge = continuousMaxAge;
+        this.continuousMaxSize = continuousMaxSize;
+        this.eventThreshold = eventThreshold;
+        this.maxDuration = maxDuration;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!continuousEnabled || continuous != null) {
+            return;
+        }
+        Recording recording = new Recording(settings("default"));
+        recording.setName(CONTINUOUS);
+        recording.setToDisk(true);
+        recording.setMaxAge(continuousMaxAge);
+        recording.setMaxSize(continuousMaxSize.toBytes());
+        AUTH_EVENTS.forEach(event -> recording.enable(event).withThreshold(eventThreshold));
+        recording.start();
+        continuous = recording;
+        log.info("Continuous flight recording of the last {} started", continuousMaxAge);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (continuous != null) {
+            continuous.close();
+            continuous = null;
+        }
+        if (onDemand != null) {
+            onDemand.close();
+            onDemand = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return continuous != null;
+    }
+
+    /** Starts a bounded recording with every auth event, unless one is already running.
+     * A previous on-demand recording is discarded
+     *
+     * @param duration how long to record, capped at jfr.recording.max-duration, which is also the default
+     * @return the status of the recordings
+     */
+    public synchronized Map<String, Object> startRecording(Duration duration) {
+        if (onDemand != null && onDemand.getState() == RecordingState.RUNNING) {
+            return status();
+        }
+        if (onDemand != null) {
+            onDemand.close();
+        }
+        Recording recording = new Recording(settings("profile"));
+        recording.setName(ON_DEMAND);
+        recording.setToDisk(true);
+        recording.setDuration(duration == null || duration.compareTo(maxDuration) > 0 ? maxDuration : duration);
+        recording.setMaxSize(maxSize.toBytes());
+        AUTH_EVENTS.forEach(event -> recording.enable(event).withoutThreshold());
+        recording.start();
+        onDemand = recording;
+        log.info("On-demand flight recording started for {}", recording.getDuration());
+        return status();
+    }
+
+    /** Stops the on-demand recording, its events are kept until the next one starts
+     *
+     * @return the status of the recordings
+     */
+    public synchronized Map<String, Object> stopRecording() {
+        if (onDemand != null && onDemand.getState() == RecordingState.RUNNING) {
+            onDemand.stop();
+        }
+        return status();
+    }
+
+    /** Writes the on-demand recording, or the continuous one if none was started, to a temporary .jfr file
+     *
+     * @return the file, to be deleted by the caller, or null if there is nothing to dump
+     * @throws IOException if the file can not be written
+     */
+    public synchronized Path dump() throws IOException {
+        Recording recording = onDemand != null ? onDemand : continuous;
+        if (recording == null) {
+            return null;
+        }
+        Path file = Files.createTempFile(recording.getName() + "-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /** State of the continuous and on-demand recordings
+     *
+     * @return the state, start time and bounds of each recording
+     */
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("continuous", describe(continuous));
+        status.put("onDemand", describe(onDemand));
+        return status;
+    }
+
+    private static Map<String, Object> describe(Recording recording) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        if (recording == null) {
+            description.put("state", "NONE");
+            return description;
+        }
+        description.put("state", recording.getState().name());
+        description.put("startTime", recording.getStartTime());
+        description.put("duration", recording.getDuration());
+        description.put("maxAge", recording.getMaxAge());
+        description.put("maxSize", recording.getMaxSize());
+        return description;
+    }
+
+    private static Configuration settings(String name) {
+        try {
+            return Configuration.getConfiguration(name);
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("JFR settings " + name + " are not available", e);
+        }
+    }
+}
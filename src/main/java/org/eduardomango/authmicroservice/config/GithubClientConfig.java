@@ -0,0 +1,110 @@
+package org.eduardomango.authmicroservice.config;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP client of the GitHub API. Connections are pooled and kept alive between token exchanges, so only the first
+ * call to a host pays the TCP and TLS handshakes, and every call is bounded by timeouts so a slow GitHub can not hold
+ * request threads. Calls are timed per host by the http.client.requests metrics of the RestTemplateBuilder, and the pool
+ * usage is exported as the httpcomponents.httpclient.pool metrics of the "github" client.
+ * Exchanges run on virtual threads, so waiting for GitHub takes no platform thread and the number of exchanges
+ * in flight is bounded by the connection pool rather than by the request threads.
+ */
+@Configuration
+public class GithubClientConfig {
+
+    /** Pool of the connections to GitHub
+     *
+     * @param maxConnections connections open at most, to every host
+     * @param maxConnectionsPerRoute connections open at most to a single host
+     * @param connectTimeout time to establish a connection
+     * @param readTimeout time without receiving data on an open connection
+     * @param timeToLive time after which a connection is no longer reused, so DNS changes are eventually followed
+     * @return the connection manager
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager githubConnectionManager(
+            @Value("${github.client.max-connections:200}") int maxConnections,
+            @Value("${github.client.max-connections-per-route:100}") int maxConnectionsPerRoute,
+            @Value("${github.client.connect-timeout:PT2S}") Duration connectTimeout,
+            @Value("${github.client.read-timeout:PT5S}") Duration readTimeout,
+            @Value("${github.client.time-to-live:PT5M}") Duration timeToLive) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setTimeToLive(TimeValue.of(timeToLive))
+                        // Stale connections closed by the server are detected before reuse instead of failing a call
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    /** Runs the GitHub exchanges, one virtual thread each
+     *
+     * @return the executor, closed on shutdown after the running exchanges end
+     */
+    @Bean(destroyMethod = "close")
+    public ExecutorService githubExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("github-exchange-", 0).factory());
+    }
+
+    @Bean
+    public MeterBinder githubConnectionPoolMetrics(PoolingHttpClientConnectionManager githubConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(githubConnectionManager, "github");
+    }
+
+    /** Client of the GitHub API, requests take paths relative to the base URL
+     *
+     * @param builder builder with the observation of the calls
+     * @param githubConnectionManager pool of the connections
+     * @param baseUrl base URL of the GitHub API, a local stub in tests
+     * @param poolTimeout time waiting for a pooled connection when every connection is in use
+     * @param readTimeout time waiting for the response
+     * @param idleTimeout connections idle for longer are closed
+     * @return the client
+     */
+    @Bean
+    public RestTemplate githubRestTemplate(RestTemplateBuilder builder,
+                                           PoolingHttpClientConnectionManager githubConnectionManager,
+                                           @Value("${github.api.base-url:https://api.github.com}") String baseUrl,
+                                           @Value("${github.client.pool-timeout:PT1S}") Duration poolTimeout,
+                                           @Value("${github.client.read-timeout:PT5S}") Duration readTimeout,
+                                           @Value("${github.client.idle-timeout:PT30S}") Duration idleTimeout) {
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(githubConnectionManager)
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictIdleConnections(TimeValue.of(idleTimeout))
+                .evictExpiredConnections()
+                .build();
+        return builder
+                .rootUri(baseUrl)
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+                .build();
+    }
+}
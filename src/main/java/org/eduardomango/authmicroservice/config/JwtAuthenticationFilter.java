@@ -2,11 +2,21 @@ package org.eduardomango.authmicroservice.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.eduardomango.authmicroservice.models.auth.JwtPrincipal;
+import org.eduardomango.authmicroservice.models.auth.VerifiedToken;
+import org.eduardomango.authmicroservice.services.impl.AuthMetrics;
+import org.eduardomango.authmicroservice.services.impl.AuthenticationEvent;
+import org.eduardomango.authmicroservice.services.impl.PersistenceEvent;
+import org.eduardomango.authmicroservice.services.impl.TokenRevocationIndex;
 import org.eduardomango.authmicroservice.services.interfaces.JwtService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -23,19 +33,35 @@ import java.util.Map;
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final Logger log = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
+
     private final UserDetailsService userDetailsService;
     private final JwtService jwtService;
+    private final TokenRevocationIndex revocationIndex;
+    private final AuthMetrics metrics;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final boolean statelessPrincipal;
 
-    public JwtAuthenticationFilter(UserDetailsService userDetailsService, JwtService jwtService) {
+    public JwtAuthenticationFilter(UserDetailsService userDetailsService,
+                                   JwtService jwtService,
+                                   TokenRevocationIndex revocationIndex,
+                                   AuthMetrics metrics,
+                                   @Value("${jwt.stateless-principal:false}") boolean statelessPrincipal) {
         this.userDetailsService = userDetailsService;
         this.jwtService = jwtService;
+        this.revocationIndex = revocationIndex;
+        this.metrics = metrics;
+        this.statelessPrincipal = statelessPrincipal;
     }
 
     /**
      * JWT authentication filter that intercepts every request to check for a valid token.
+     * The token signature is verified only once and the result is reused for the rest of the checks.
      * If a valid token is found, it sets the authentication context for the request.
-     * If the token is expired, it returns a 401 Unauthorized response.
+     * When jwt.stateless-principal is enabled the principal is built from the token claims
+     * and the user is not loaded from the database.
+     * If the token is expired, invalid or revoked, it returns a 401 Unauthorized response.
+     * The authentication of a bearer request, without the rest of the chain, is recorded as an {@link AuthenticationEvent}.
      *
      * @param request The incoming HTTP request.
      * @param response The HTTP response to be sent.
@@ -49,6 +75,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                     FilterChain filterChain)
             throws ServletException, IOException {
 
+        AuthenticationEvent event = null;
         try {
         final String authHeader = request.getHeader("Authorization");
 
@@ -57,43 +84,111 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
+        event = AuthenticationEvent.begin(AuthenticationEvent.REQUEST);
         final String jwt = authHeader.substring(7);
-        final String username = jwtService.extractUsername(jwt);
+        final VerifiedToken token = jwtService.verify(jwt);
+        final String username = token.subject();
+        event.username(username);
+
+        if (revocationIndex.isRevoked(token)) {
+            event.complete("revoked");
+            event = null;
+            writeUnauthorized(response, "Token has been revoked");
+            return;
+        }
 
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String outcome = AuthMetrics.SUCCESS;
 
         if (username != null && authentication == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+            JwtPrincipal principal = resolvePrincipal(token);
 
-            if (jwtService.isTokenValid(jwt, userDetails)) {
-                //TODO Mapear UserDetails a un Principal que no contenga password
+            if (principal != null) {
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails,
+                        principal,
                         null,
-                        userDetails.getAuthorities()
+                        principal.authorities()
                 );
 
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
+            } else {
+                outcome = "rejected";
             }
         }
 
+        event.complete(outcome);
+        event = null;
         filterChain.doFilter(request, response);
         }catch (ExpiredJwtException ex) {
             // Custom response for expired token
-            System.out.println("Thrown exception: " + ex.getMessage());
-            Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("message", "Token has expired");
-
-            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-            response.setContentType("application/json");
-            objectMapper.writeValue(response.getWriter(), errorResponse);
+            log.debug("Rejected expired token: {}", ex.getMessage());
+            if (event != null) {
+                event.fail(ex);
+            }
+            writeUnauthorized(response, "Token has expired");
+        }catch (JwtException ex) {
+            // Malformed tokens, bad signatures and unknown keys, failures of the rest of the chain are rethrown
+            if (event == null) {
+                throw ex;
+            }
+            log.debug("Rejected invalid token: {}", ex.getMessage());
+            event.fail(ex);
+            writeUnauthorized(response, "Invalid token");
         }catch (Exception ex) {
-            ex.printStackTrace();
+            // Null once the authentication is recorded, failures of the rest of the chain are not part of it
+            if (event != null) {
+                event.fail(ex);
+            }
+            log.warn("Could not authenticate the request to {}", request.getRequestURI(), ex);
             throw ex;
         }
     }
 
+    private void writeUnauthorized(HttpServletResponse response, String message) throws IOException {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("message", message);
+
+        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        response.setContentType("application/json");
+        objectMapper.writeValue(response.getWriter(), errorResponse);
+    }
+
+    /**
+     * Resolves the principal of a verified token.
+     * In stateless mode the principal comes straight from the roles claim,
+     * otherwise the user is loaded from the database and checked against the token.
+     * Timed in auth.authorities.resolve, and the loading of the user in auth.user.load and as a {@link PersistenceEvent}.
+     *
+     * @param token The verified token of the request.
+     * @return The principal, or null if the token is not valid for the user.
+     */
+    private JwtPrincipal resolvePrincipal(VerifiedToken token) {
+        if (statelessPrincipal) {
+            return token.isExpired() ? null
+                    : metrics.time(AuthMetrics.Stage.AUTHORITY_RESOLUTION, () -> JwtPrincipal.fromToken(token));
+        }
+
+        UserDetails userDetails = loadUser(token.subject());
+        return jwtService.isTokenValid(token, userDetails)
+                ? metrics.time(AuthMetrics.Stage.AUTHORITY_RESOLUTION, () -> JwtPrincipal.fromUserDetails(userDetails))
+                : null;
+    }
+
+    private UserDetails loadUser(String username) {
+        PersistenceEvent event = PersistenceEvent.begin(PersistenceEvent.LOAD_USER);
+        event.username(username);
+        try {
+            UserDetails userDetails = metrics.time(AuthMetrics.Stage.USER_LOAD,
+                    () -> this.userDetailsService.loadUserByUsername(username));
+            event.complete(AuthMetrics.SUCCESS);
+            return userDetails;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+    }
+
     /**
      * Determines whether a request should bypass the authentication filter.
      * Requests matching certain paths (such as login and registration) are excluded from filtering.
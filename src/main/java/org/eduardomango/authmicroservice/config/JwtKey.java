@@ -0,0 +1,88 @@
+package org.eduardomango.authmicroservice.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+
+/**
+ * A key used to sign or verify JWT tokens.
+ *
+ * @param kid key id, the RFC 7638 thumbprint of the public key
+ * @param algorithm signature algorithm the key is used with
+ * @param privateKey private key, null for keys that only verify tokens
+ * @param publicKey public key, published in the JWKS
+ */
+public record JwtKey(String kid, SignatureAlgorithm algorithm, PrivateKey privateKey, PublicKey publicKey) {
+
+    /** Builds a key, computing its key id from the public key
+     *
+     * @param algorithm signature algorithm the key is used with
+     * @param privateKey private key, null for keys that only verify tokens
+     * @param publicKey public key
+     * @return the key
+     */
+    public static JwtKey of(SignatureAlgorithm algorithm, PrivateKey privateKey, PublicKey publicKey) {
+        try {
+            String kid = publicJwk(null, algorithm, publicKey).computeThumbprint().toString();
+            return new JwtKey(kid, algorithm, privateKey, publicKey);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Could not compute the key id of the " + algorithm + " key", e);
+        }
+    }
+
+    /** Name of the KeyFactory algorithm that reads keys for a signature algorithm
+     *
+     * @param algorithm signature algorithm
+     * @return "RSA" or "EC"
+     */
+    public static String keyFactoryAlgorithm(SignatureAlgorithm algorithm) {
+        if (algorithm.isRsa()) {
+            return "RSA";
+        }
+        if (algorithm.isEllipticCurve()) {
+            return "EC";
+        }
+        throw new IllegalArgumentException("Unsupported JWT signature algorithm: " + algorithm);
+    }
+
+    public boolean canSign() {
+        return privateKey != null;
+    }
+
+    /** Public part of the key as a JWK, as published in the JWKS
+     *
+     * @return the public JWK
+     */
+    public JWK toPublicJwk() {
+        return publicJwk(kid, algorithm, publicKey);
+    }
+
+    private static JWK publicJwk(String kid, SignatureAlgorithm algorithm, PublicKey publicKey) {
+        JWSAlgorithm jwsAlgorithm = JWSAlgorithm.parse(algorithm.getValue());
+        if (publicKey instanceof RSAPublicKey rsaPublicKey) {
+            return new RSAKey.Builder(rsaPublicKey)
+                    .keyID(kid)
+                    .keyUse(KeyUse.SIGNATURE)
+                    .algorithm(jwsAlgorithm)
+                    .build();
+        }
+        if (publicKey instanceof ECPublicKey ecPublicKey) {
+            return new ECKey.Builder(Curve.forECParameterSpec(ecPublicKey.getParams()), ecPublicKey)
+                    .keyID(kid)
+                    .keyUse(KeyUse.SIGNATURE)
+                    .algorithm(jwsAlgorithm)
+                    .build();
+        }
+        throw new IllegalArgumentException("Unsupported public key type: " + publicKey.getAlgorithm());
+    }
+}
@@ -0,0 +1,131 @@
+package org.eduardomango.authmicroservice.config;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads PEM encoded JWT keys, either single files or a directory of keys.
+ * In a key directory every key is a {@code <name>.pub.pem} X.509 public key,
+ * with an optional {@code <name>.key.pem} PKCS#8 private key for keys that can sign.
+ */
+final class JwtKeyFiles {
+
+    static final String PUBLIC_KEY_SUFFIX = ".pub.pem";
+    static final String PRIVATE_KEY_SUFFIX = ".key.pem";
+
+    private JwtKeyFiles() {
+    }
+
+    /**
+     * A key read from a key directory.
+     *
+     * @param key the key
+     * @param modifiedAt last modification of the key files, the newest signing key is the active one
+     */
+    record DirectoryKey(JwtKey key, Instant modifiedAt) {
+    }
+
+    static PrivateKey readPrivateKey(InputStream pem, String keyAlgorithm) throws IOException, GeneralSecurityException {
+        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(decodePem(pem));
+        return KeyFactory.getInstance(keyAlgorithm).generatePrivate(keySpec);
+    }
+
+    static PublicKey readPublicKey(InputStream pem, String keyAlgorithm) throws IOException, GeneralSecurityException {
+        X509EncodedKeySpec keySpec = new X509EncodedKeySpec(decodePem(pem));
+        return KeyFactory.getInstance(keyAlgorithm).generatePublic(keySpec);
+    }
+
+    /** Reads every key of a key directory
+     *
+     * @param directory the key directory
+     * @param preferredAlgorithm algorithm used for keys of its family, other keys use the default algorithm of their type
+     * @return the keys of the directory
+     */
+    static List<DirectoryKey> readDirectory(Path directory, SignatureAlgorithm preferredAlgorithm)
+            throws IOException, GeneralSecurityException {
+        List<DirectoryKey> keys = new ArrayList<>();
+        List<Path> publicKeyFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            publicKeyFiles = files
+                    .filter(file -> file.getFileName().toString().endsWith(PUBLIC_KEY_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        for (Path publicKeyFile : publicKeyFiles) {
+            String name = publicKeyFile.getFileName().toString();
+            Path privateKeyFile = publicKeyFile.resolveSibling(
+                    name.substring(0, name.length() - PUBLIC_KEY_SUFFIX.length()) + PRIVATE_KEY_SUFFIX);
+
+            byte[] publicKeyBytes = decodePem(Files.newInputStream(publicKeyFile));
+            String keyAlgorithm = keyAlgorithmOf(publicKeyBytes);
+            PublicKey publicKey = KeyFactory.getInstance(keyAlgorithm).generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+            SignatureAlgorithm algorithm = signatureAlgorithmOf(publicKey, preferredAlgorithm);
+
+            PrivateKey privateKey = null;
+            Instant modifiedAt = Files.getLastModifiedTime(publicKeyFile).toInstant();
+            if (Files.exists(privateKeyFile)) {
+                privateKey = readPrivateKey(Files.newInputStream(privateKeyFile), keyAlgorithm);
+                Instant privateModifiedAt = Files.getLastModifiedTime(privateKeyFile).toInstant();
+                modifiedAt = privateModifiedAt.isAfter(modifiedAt) ? privateModifiedAt : modifiedAt;
+            }
+            keys.add(new DirectoryKey(JwtKey.of(algorithm, privateKey, publicKey), modifiedAt));
+        }
+        return keys;
+    }
+
+    private static String keyAlgorithmOf(byte[] publicKeyBytes) throws GeneralSecurityException {
+        try {
+            KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+            return "RSA";
+        } catch (InvalidKeySpecException e) {
+            KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+            return "EC";
+        }
+    }
+
+    private static SignatureAlgorithm signatureAlgorithmOf(PublicKey publicKey, SignatureAlgorithm preferredAlgorithm) {
+        if (publicKey instanceof ECPublicKey ecPublicKey) {
+            if (preferredAlgorithm.isEllipticCurve()
+                    && preferredAlgorithm.getMinKeyLength() == ecPublicKey.getParams().getCurve().getField().getFieldSize()) {
+                return preferredAlgorithm;
+            }
+            return switch (ecPublicKey.getParams().getCurve().getField().getFieldSize()) {
+                case 256 -> SignatureAlgorithm.ES256;
+                case 384 -> SignatureAlgorithm.ES384;
+                case 521 -> SignatureAlgorithm.ES512;
+                default -> throw new IllegalArgumentException("Unsupported elliptic curve for JWT keys");
+            };
+        }
+        return preferredAlgorithm.isRsa() ? preferredAlgorithm : SignatureAlgorithm.RS256;
+    }
+
+    private static byte[] decodePem(InputStream pem) throws IOException {
+        try (pem) {
+            String base64 = new String(pem.readAllBytes(), StandardCharsets.US_ASCII)
+                    .lines()
+                    .filter(line -> !line.startsWith("-----")) // Filtra encabezados y pies de página
+                    .collect(Collectors.joining());
+            return Base64.getDecoder().decode(base64);
+        }
+    }
+}
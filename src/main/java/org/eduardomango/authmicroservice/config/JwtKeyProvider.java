@@ -1,51 +1,175 @@
 package org.eduardomango.authmicroservice.config;
 
-import lombok.Getter;
-import org.springframework.core.io.ClassPathResource;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.security.KeyFactory;
+import java.nio.file.Path;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
-import java.util.stream.Collectors;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
-@Getter
+/**
+ * Key ring with the keys used to sign and verify JWT tokens.
+ * Tokens are signed with the active signing key and verified with any key of the ring, looked up by kid.
+ * <p>
+ * Without a key directory the ring is the key pair of the configured algorithm (jwt.algorithm, RS256 by default),
+ * plus an optional previous public key still accepted during an algorithm or key migration.
+ * With jwt.keys.directory the ring is read from that directory, and {@link JwtKeyRotationScheduler}
+ * rotates it without a restart. A new key of the directory is published for jwt.keys.promotion-delay before it signs.
+ */
 @Component
 public class JwtKeyProvider {
-    private final PrivateKey privateKey;
-    private final PublicKey publicKey;
 
-    public JwtKeyProvider() throws Exception {
-        this.privateKey = loadPrivateKey();
-        this.publicKey = loadPublicKey();
+    /**
+     * Immutable snapshot of the ring, replaced as a whole so readers never see a half rotated ring.
+     */
+    private record KeyRing(JwtKey signingKey, List<JwtKey> verificationKeys, Map<String, JwtKey> verificationKeysById) {
     }
 
-    private PrivateKey loadPrivateKey() throws Exception {
-        String keyPEM = readKeyFile("private_key.pem");
-        byte[] keyBytes = Base64.getDecoder().decode(keyPEM);
-        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(keyBytes);
-        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-        return keyFactory.generatePrivate(keySpec);
+    private volatile KeyRing ring;
+
+    @Autowired
+    public JwtKeyProvider(@Value("${jwt.algorithm:RS256}") SignatureAlgorithm algorithm,
+                          @Value("${jwt.private-key:classpath:private_key.pem}") Resource privateKey,
+                          @Value("${jwt.public-key:classpath:public_key.pem}") Resource publicKey,
+                          @Value("${jwt.previous.algorithm:RS256}") SignatureAlgorithm previousAlgorithm,
+                          @Value("${jwt.previous.public-key:#{null}}") Resource previousPublicKey,
+                          @Value("${jwt.keys.directory:}") String keysDirectory,
+                          @Value("${jwt.keys.promotion-delay:#{null}}") Duration promotionDelay,
+                          @Value("${jwt.keys.refresh-interval:PT1M}") Duration refreshInterval,
+                          @Value("${jwt.keys.jwks-max-age:${jwt.keys.refresh-interval:PT1M}}") Duration jwksMaxAge) throws Exception {
+        if (!keysDirectory.isBlank()) {
+            List<JwtKeyFiles.DirectoryKey> keys = JwtKeyFiles.readDirectory(Path.of(keysDirectory), algorithm);
+            JwtKey signingKey = signingKey(keys, Instant.now(), promotionDelay(promotionDelay, refreshInterval, jwksMaxAge));
+            if (signingKey == null) {
+                throw new IllegalStateException("No private key found in the JWT key directory " + keysDirectory);
+            }
+            rotate(signingKey, keys.stream().map(JwtKeyFiles.DirectoryKey::key).toList());
+            return;
+        }
+
+        String keyAlgorithm = JwtKey.keyFactoryAlgorithm(algorithm);
+        JwtKey signingKey = JwtKey.of(algorithm,
+                JwtKeyFiles.readPrivateKey(privateKey.getInputStream(), keyAlgorithm),
+                JwtKeyFiles.readPublicKey(publicKey.getInputStream(), keyAlgorithm));
+        List<JwtKey> keys = new ArrayList<>(List.of(signingKey));
+        if (previousPublicKey != null) {
+            keys.add(JwtKey.of(previousAlgorithm, null, JwtKeyFiles.readPublicKey(
+                    previousPublicKey.getInputStream(), JwtKey.keyFactoryAlgorithm(previousAlgorithm))));
+        }
+        rotate(signingKey, keys);
     }
 
-    private PublicKey loadPublicKey() throws Exception {
-        String keyPEM = readKeyFile("public_key.pem");
-        byte[] keyBytes = Base64.getDecoder().decode(keyPEM);
-        X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
-        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-        return keyFactory.generatePublic(keySpec);
+    public JwtKeyProvider(PrivateKey privateKey, PublicKey publicKey) {
+        this(JwtKey.of(SignatureAlgorithm.RS256, privateKey, publicKey), List.of());
     }
 
-    private String readKeyFile(String filename) throws IOException {
-        return Files.readAllLines(new ClassPathResource(filename).getFile().toPath())
-                .stream()
-                .filter(line -> !line.startsWith("-----")) // Filtra encabezados y pies de página
-                .collect(Collectors.joining());
+    public JwtKeyProvider(JwtKey signingKey, List<JwtKey> previousKeys) {
+        List<JwtKey> keys = new ArrayList<>(List.of(signingKey));
+        keys.addAll(previousKeys);
+        rotate(signingKey, keys);
+    }
+
+    /** Replaces the key ring
+     *
+     * @param signingKey new active signing key, must have a private key
+     * @param verificationKeys every key that can verify tokens, the signing key is always included
+     * @return true if the ring changed
+     */
+    public synchronized boolean rotate(JwtKey signingKey, Collection<JwtKey> verificationKeys) {
+        if (!signingKey.canSign()) {
+            throw new IllegalArgumentException("The signing key " + signingKey.kid() + " has no private key");
+        }
+        Map<String, JwtKey> byId = new LinkedHashMap<>();
+        byId.put(signingKey.kid(), signingKey);
+        verificationKeys.forEach(key -> byId.putIfAbsent(key.kid(), key));
+
+        KeyRing current = this.ring;
+        if (current != null
+                && current.signingKey().kid().equals(signingKey.kid())
+                && current.verificationKeysById().keySet().equals(byId.keySet())) {
+            return false;
+        }
+        this.ring = new KeyRing(signingKey, List.copyOf(byId.values()), Map.copyOf(byId));
+        return true;
+    }
+
+    public JwtKey getSigningKey() {
+        return ring.signingKey();
+    }
+
+    public List<JwtKey> getVerificationKeys() {
+        return ring.verificationKeys();
     }
-}
 
+    public PrivateKey getPrivateKey() {
+        return ring.signingKey().privateKey();
+    }
+
+    public PublicKey getPublicKey() {
+        return ring.signingKey().publicKey();
+    }
+
+    /** Finds a key able to verify tokens by its key id
+     *
+     * @param kid key id from the token header
+     * @return the key, or null if no verification key has that id
+     */
+    public JwtKey findVerificationKey(String kid) {
+        return ring.verificationKeysById().get(kid);
+    }
+
+    /** How long a new key of the directory is published before it signs. The last node reads a new key up to
+     * a refresh interval after it was written, and a verifier may have fetched that node's JWKS just before and
+     * cache it for the JWKS max age, so a key is known everywhere only after refresh interval + JWKS max age.
+     * The minimum adds one more refresh interval for the scheduling delay of the reads.
+     *
+     * @param configured jwt.keys.promotion-delay, or null to use the minimum
+     * @param refreshInterval jwt.keys.refresh-interval, how often every node reads the directory
+     * @param jwksMaxAge jwt.keys.jwks-max-age, how long verifiers may cache the JWKS
+     * @return the promotion delay
+     * @throws IllegalStateException if the configured delay is shorter than 2 * refresh interval + JWKS max age
+     */
+    public static Duration promotionDelay(Duration configured, Duration refreshInterval, Duration jwksMaxAge) {
+        Duration minimum = refreshInterval.multipliedBy(2).plus(jwksMaxAge);
+        if (configured == null) {
+            return minimum;
+        }
+        if (configured.compareTo(minimum) < 0) {
+            throw new IllegalStateException("jwt.keys.promotion-delay " + configured + " is shorter than "
+                    + minimum + " (2 * jwt.keys.refresh-interval + jwt.keys.jwks-max-age), verifiers could reject "
+                    + "the tokens of a new key until their JWKS cache expires");
+        }
+        return configured;
+    }
+
+    /** The signing key of a key directory: the newest key with a private key that has been in the directory
+     * for the promotion delay, so a key only signs once every verifier of its tokens can know it.
+     * If no key is that old, like for the first keys of a directory, the newest key with a private key signs.
+     *
+     * @param keys keys of the directory
+     * @param now current time
+     * @param promotionDelay how long a key is published before it signs, see {@link #promotionDelay}
+     * @return the key, or null if no key of the directory has a private key
+     */
+    static JwtKey signingKey(List<JwtKeyFiles.DirectoryKey> keys, Instant now, Duration promotionDelay) {
+        Comparator<JwtKeyFiles.DirectoryKey> byAge = Comparator.comparing(JwtKeyFiles.DirectoryKey::modifiedAt);
+        List<JwtKeyFiles.DirectoryKey> signingKeys = keys.stream().filter(key -> key.key().canSign()).toList();
+        return signingKeys.stream()
+                .filter(key -> !key.modifiedAt().plus(promotionDelay).isAfter(now))
+                .max(byAge)
+                .or(() -> signingKeys.stream().max(byAge))
+                .map(JwtKeyFiles.DirectoryKey::key)
+                .orElse(null);
+    }
+}
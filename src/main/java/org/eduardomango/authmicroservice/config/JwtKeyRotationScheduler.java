@@ -0,0 +1,119 @@
+package org.eduardomango.authmicroservice.config;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Rotates the JWT key ring from the key directory (jwt.keys.directory) without a restart.
+ * The directory is read every jwt.keys.refresh-interval and every key of it verifies tokens and is published.
+ * The newest key with a private key becomes the signing key once it has been in the directory for
+ * jwt.keys.promotion-delay, 2 * refresh interval + jwt.keys.jwks-max-age at least, so every node publishes it and
+ * every cached JWKS has expired before any token is signed with it. Until then the previous key keeps signing. A key removed from the directory still verifies tokens
+ * for jwt.keys.retention, so tokens signed with it stay valid until they expire.
+ */
+@Component
+@ConditionalOnProperty("jwt.keys.directory")
+public class JwtKeyRotationScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyRotationScheduler.class);
+
+    private final JwtKeyProvider keyProvider;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Path directory;
+    private final SignatureAlgorithm algorithm;
+    private final Duration retention;
+    private final Duration promotionDelay;
+
+    private record RetiredKey(JwtKey key, Instant retiredAt) {
+    }
+
+    private final Map<String, RetiredKey> retiredKeys = new HashMap<>();
+
+    @Autowired
+    public JwtKeyRotationScheduler(JwtKeyProvider keyProvider,
+                                   ApplicationEventPublisher eventPublisher,
+                                   @Value("${jwt.keys.directory}") Path directory,
+                                   @Value("${jwt.algorithm:RS256}") SignatureAlgorithm algorithm,
+                                   @Value("${jwt.keys.retention:P7D}") Duration retention,
+                                   @Value("${jwt.keys.promotion-delay:#{null}}") Duration promotionDelay,
+                                   @Value("${jwt.keys.refresh-interval:PT1M}") Duration refreshInterval,
+                                   @Value("${jwt.keys.jwks-max-age:${jwt.keys.refresh-interval:PT1M}}") Duration jwksMaxAge) {
+        this(keyProvider, eventPublisher, directory, algorithm, retention,
+                JwtKeyProvider.promotionDelay(promotionDelay, refreshInterval, jwksMaxAge));
+    }
+
+    public JwtKeyRotationScheduler(JwtKeyProvider keyProvider,
+                                   ApplicationEventPublisher eventPublisher,
+                                   Path directory,
+                                   SignatureAlgorithm algorithm,
+                                   Duration retention,
+                                   Duration promotionDelay) {
+        this.keyProvider = keyProvider;
+        this.eventPublisher = eventPublisher;
+        this.directory = directory;
+        this.algorithm = algorithm;
+        this.retention = retention;
+        this.promotionDelay = promotionDelay;
+    }
+
+    /**
+     * Reads the key directory and rotates the key ring if its keys changed.
+     * If the directory can not be read or has no signing key the current ring is kept.
+     */
+    @Scheduled(initialDelayString = "${jwt.keys.refresh-interval:PT1M}", fixedDelayString = "${jwt.keys.refresh-interval:PT1M}")
+    public synchronized void refresh() {
+        List<JwtKeyFiles.DirectoryKey> directoryKeys;
+        try {
+            directoryKeys = JwtKeyFiles.readDirectory(directory, algorithm);
+        } catch (Exception e) {
+            log.error("Could not read the JWT key directory {}, keeping the current keys", directory, e);
+            return;
+        }
+
+        Instant now = Instant.now();
+        JwtKey signingKey = JwtKeyProvider.signingKey(directoryKeys, now, promotionDelay);
+        if (signingKey == null) {
+            log.warn("No private key found in the JWT key directory {}, keeping the current keys", directory);
+            return;
+        }
+
+        List<JwtKey> liveKeys = directoryKeys.stream().map(JwtKeyFiles.DirectoryKey::key).toList();
+        Set<String> liveKids = liveKeys.stream().map(JwtKey::kid).collect(Collectors.toSet());
+        List<JwtKey> previousKeys = keyProvider.getVerificationKeys();
+
+        // Keys that left the directory keep verifying, without their private key, until the retention ends
+        previousKeys.stream()
+                .filter(key -> !liveKids.contains(key.kid()))
+                .forEach(key -> retiredKeys.putIfAbsent(key.kid(),
+                        new RetiredKey(new JwtKey(key.kid(), key.algorithm(), null, key.publicKey()), now)));
+        retiredKeys.keySet().removeAll(liveKids);
+        retiredKeys.values().removeIf(retired -> retired.retiredAt().plus(retention).isBefore(now));
+
+        List<JwtKey> verificationKeys = new ArrayList<>(liveKeys);
+        retiredKeys.values().forEach(retired -> verificationKeys.add(retired.key()));
+
+        if (keyProvider.rotate(signingKey, verificationKeys)) {
+            Set<String> currentKids = keyProvider.getVerificationKeys().stream().map(JwtKey::kid).collect(Collectors.toSet());
+            boolean keysRemoved = previousKeys.stream().anyMatch(key -> !currentKids.contains(key.kid()));
+            log.info("Rotated JWT keys, signing with {} and verifying with {}", signingKey.kid(), currentKids);
+            eventPublisher.publishEvent(new JwtKeysRotatedEvent(signingKey, keyProvider.getVerificationKeys(), keysRemoved));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.eduardomango.authmicroservice.config;
+
+import java.util.List;
+
+/**
+ * Published when the JWT key ring changes.
+ *
+ * @param signingKey the active signing key
+ * @param verificationKeys every key that can verify tokens
+ * @param keysRemoved true if some key can no longer verify tokens
+ */
+public record JwtKeysRotatedEvent(JwtKey signingKey, List<JwtKey> verificationKeys, boolean keysRemoved) {
+}
@@ -0,0 +1,106 @@
+package org.eduardomango.authmicroservice.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Builds the password encoder with a work factor calibrated on the hardware it runs on.
+ * Hashes are stored with their algorithm prefix ({bcrypt} or {argon2}) and carry their own cost,
+ * so hashes of an older algorithm or a lower cost keep matching and get rehashed on the next login.
+ */
+final class PasswordHashing {
+
+    static final String BCRYPT = "bcrypt";
+    static final String ARGON2 = "argon2";
+
+    static final int MIN_BCRYPT_STRENGTH = 10;
+    static final int MAX_BCRYPT_STRENGTH = 16;
+    static final int MIN_ARGON2_ITERATIONS = 2;
+    static final int MAX_ARGON2_ITERATIONS = 10;
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashing.class);
+    private static final String CALIBRATION_PASSWORD = "calibration-password";
+
+    private PasswordHashing() {
+    }
+
+    /** Builds the delegating encoder hashing new passwords with the given algorithm and cost
+     *
+     * @param algorithm algorithm of new hashes, bcrypt or argon2 (Argon2id)
+     * @param cost BCrypt strength or Argon2 iterations
+     * @return the encoder, also matching legacy hashes stored without an algorithm prefix as BCrypt
+     */
+    static PasswordEncoder delegatingEncoder(String algorithm, int cost) {
+        if (!BCRYPT.equals(algorithm) && !ARGON2.equals(algorithm)) {
+            throw new IllegalArgumentException("Unsupported password hashing algorithm: " + algorithm);
+        }
+        PasswordEncoder bcrypt = BCRYPT.equals(algorithm) ? bcrypt(cost) : new BCryptPasswordEncoder();
+        PasswordEncoder argon2 = ARGON2.equals(algorithm) ? argon2(cost) : argon2(MIN_ARGON2_ITERATIONS);
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(algorithm, Map.of(BCRYPT, bcrypt, ARGON2, argon2));
+        // Hashes stored before the algorithm prefix was introduced are plain BCrypt hashes
+        encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+        return encoder;
+    }
+
+    /** Picks the highest cost whose hash time stays within the latency budget on this machine
+     *
+     * @param algorithm bcrypt or argon2
+     * @param latencyBudget target time of a single hash
+     * @return the BCrypt strength or the Argon2 iterations, never below the minimum cost of the algorithm
+     */
+    static int calibrate(String algorithm, Duration latencyBudget) {
+        return ARGON2.equals(algorithm)
+                ? calibrate(PasswordHashing::argon2, MIN_ARGON2_ITERATIONS, MAX_ARGON2_ITERATIONS, latencyBudget)
+                : calibrate(PasswordHashing::bcrypt, MIN_BCRYPT_STRENGTH, MAX_BCRYPT_STRENGTH, latencyBudget);
+    }
+
+    static int calibrate(IntFunction<PasswordEncoder> encoderForCost, int minCost, int maxCost, Duration latencyBudget) {
+        // Warms up the hashing code so the first measure is not dominated by the JIT
+        encoderForCost.apply(minCost).encode(CALIBRATION_PASSWORD);
+
+        int cost = minCost;
+        Duration elapsed = measure(encoderForCost.apply(cost));
+        while (cost < maxCost) {
+            Duration next = measure(encoderForCost.apply(cost + 1));
+            if (next.compareTo(latencyBudget) > 0) {
+                break;
+            }
+            cost++;
+            elapsed = next;
+        }
+        if (elapsed.compareTo(latencyBudget) > 0) {
+            log.warn("Password hashing takes {} ms at the minimum cost {}, over the {} ms budget",
+                    elapsed.toMillis(), cost, latencyBudget.toMillis());
+        } else {
+            log.info("Calibrated password hashing cost to {}, {} ms per hash", cost, elapsed.toMillis());
+        }
+        return cost;
+    }
+
+    private static Duration measure(PasswordEncoder encoder) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 2; i++) {
+            long start = System.nanoTime();
+            encoder.encode(CALIBRATION_PASSWORD);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return Duration.ofNanos(best);
+    }
+
+    private static PasswordEncoder bcrypt(int strength) {
+        return new BCryptPasswordEncoder(strength);
+    }
+
+    private static PasswordEncoder argon2(int iterations) {
+        // Argon2id with the salt, hash and memory (16 MiB) of the Spring Security defaults, only the iterations vary
+        return new Argon2PasswordEncoder(16, 32, 1, 16384, iterations);
+    }
+}
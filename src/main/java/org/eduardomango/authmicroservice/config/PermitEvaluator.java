@@ -0,0 +1,37 @@
+package org.eduardomango.authmicroservice.config;
+
+import org.eduardomango.authmicroservice.models.Enum.UserPermit;
+import org.eduardomango.authmicroservice.models.auth.JwtPrincipal;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+/**
+ * Permit checks for method security, used as {@code @PreAuthorize("@permits.has(authentication, 'USER_READ')")}.
+ * Requests authenticated with a JWT are checked against the permission mask of their principal,
+ * other authentications (like an OAuth2 login session) against their authorities.
+ */
+@Component("permits")
+public class PermitEvaluator {
+
+    /** Checks whether an authentication has a permit
+     *
+     * @param authentication of the current request
+     * @param permit to check
+     * @return true if the authentication has the permit
+     */
+    public boolean has(Authentication authentication, UserPermit permit) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return false;
+        }
+        if (authentication.getPrincipal() instanceof JwtPrincipal principal) {
+            return principal.hasPermit(permit);
+        }
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (permit.getCode().equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
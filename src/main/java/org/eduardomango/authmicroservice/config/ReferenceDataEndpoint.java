@@ -0,0 +1,38 @@
+package org.eduardomango.authmicroservice.config;
+
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.eduardomango.authmicroservice.services.impl.InvalidationBus;
+import org.eduardomango.authmicroservice.services.impl.ReferenceDataCache;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint of the reference data cache: GET shows the hit rate of each region, DELETE invalidates it
+ * on every node.
+ */
+@Component
+@Endpoint(id = "referencedata")
+public class ReferenceDataEndpoint {
+
+    private final ReferenceDataCache referenceDataCache;
+    private final InvalidationBus invalidationBus;
+
+    public ReferenceDataEndpoint(ReferenceDataCache referenceDataCache, InvalidationBus invalidationBus) {
+        this.referenceDataCache = referenceDataCache;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> stats() {
+        return referenceDataCache.stats();
+    }
+
+    @DeleteOperation
+    public void invalidate() {
+        invalidationBus.publish(InvalidationEvent.referenceData());
+    }
+}
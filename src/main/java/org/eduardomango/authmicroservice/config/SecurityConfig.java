@@ -1,27 +1,31 @@
 package org.eduardomango.authmicroservice.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.eduardomango.authmicroservice.services.JpaUserDetailsService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.annotation.web.configurers.HeadersConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.time.Duration;
 import java.util.List;
 
 @Configuration
+@EnableMethodSecurity
 public class SecurityConfig {
     private final RestAuthenticationEntryPoint restAuthenticationEntryPoint;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
@@ -31,9 +35,44 @@ public class SecurityConfig {
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
     }
 
+    /** Hashes passwords on a bounded pool, so slow hashing never takes every request thread.
+     * The cost of new hashes is calibrated at startup to the latency budget unless it is configured
+     *
+     * @param algorithm algorithm of new hashes, bcrypt or argon2 (Argon2id)
+     * @param cost BCrypt strength or Argon2 iterations, 0 to calibrate it
+     * @param latencyBudget target time of a single hash used by the calibration
+     * @param poolSize threads hashing passwords, one per processor by default
+     * @param queueCapacity hashing requests that can wait for a thread before new ones are rejected
+     * @param retryAfter time clients are asked to wait when the queue is full
+     * @param registry registry of the pool metrics
+     * @return the password encoder
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${password-hashing.algorithm:bcrypt}") String algorithm,
+                                           @Value("${password-hashing.cost:0}") int cost,
+                                           @Value("${password-hashing.latency-budget:250ms}") Duration latencyBudget,
+                                           @Value("${password-hashing.pool-size:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int poolSize,
+                                           @Value("${password-hashing.queue-capacity:64}") int queueCapacity,
+                                           @Value("${password-hashing.retry-after:1s}") Duration retryAfter,
+                                           MeterRegistry registry) {
+        int hashingCost = cost > 0 ? cost : PasswordHashing.calibrate(algorithm, latencyBudget);
+        return new BoundedPasswordEncoder(PasswordHashing.delegatingEncoder(algorithm, hashingCost),
+                poolSize, queueCapacity, retryAfter, registry);
+    }
+
+    /** Checks logins against the login projection of the credentials, authorities are loaded only after a match.
+     * Hashes with an outdated algorithm or cost are upgraded after a successful login
+     *
+     * @param userDetailsService source of the login credentials
+     * @param passwordEncoder encoder of the passwords
+     * @return the authentication provider of the authentication manager
+     */
+    @Bean
+    public DaoAuthenticationProvider authenticationProvider(JpaUserDetailsService userDetailsService, PasswordEncoder passwordEncoder) {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(passwordEncoder);
+        provider.setUserDetailsService(userDetailsService::loadLoginCredentials);
+        provider.setUserDetailsPasswordService(userDetailsService);
+        return provider;
     }
 
     @Bean
@@ -50,6 +89,9 @@ public class SecurityConfig {
                                 "/.well-known/jwks.json").permitAll()
                         .requestMatchers("/js/**","/css/**").permitAll()
                         .requestMatchers("/success").authenticated()
+                        // Cache flushes, recordings and metrics are for operators only
+                        .requestMatchers("/actuator/referencedata/**", "/actuator/metrics/**",
+                                "/actuator/prometheus", "/actuator/flightrecorder/**").hasRole("ADMIN")
                         .anyRequest().authenticated())
                 .oauth2Login(oauth2 -> oauth2
                         .loginPage("/login")
@@ -80,10 +122,4 @@ public class SecurityConfig {
 
         return source;
     }
-
-
-    @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
-    }
 }
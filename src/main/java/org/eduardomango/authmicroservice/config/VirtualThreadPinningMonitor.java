@@ -0,0 +1,112 @@
+package org.eduardomango.authmicroservice.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Reports the virtual threads pinned to their carrier while blocked, when the servlet stack runs on virtual threads
+ * (spring.threads.virtual.enabled). A virtual thread blocking inside a synchronized block or a native frame, like in
+ * a JDBC driver or a connection pool, keeps its carrier thread, and enough of them stall every virtual thread.
+ * The JVM emits a jdk.VirtualThreadPinned JFR event for each pinning longer than the threshold, this monitor streams
+ * them in-process: they are timed in jvm.threads.virtual.pinned and each distinct stack is logged once.
+ * The events also land in any JFR recording of the process, with their stacks.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final int MAX_REPORTED_STACKS = 1000;
+    private static final int LOGGED_FRAMES = 16;
+
+    private final Duration threshold;
+    private final Timer pinnedTimer;
+    private final Set<String> reportedStacks = ConcurrentHashMap.newKeySet();
+
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry registry,
+                                       @Value("${threads.virtual.pinning.threshold:PT0.02S}") Duration threshold) {
+        this.threshold = threshold;
+        this.pinnedTimer = Timer.builder("jvm.threads.virtual.pinned")
+                .description("Time virtual threads were blocked while pinned to their carrier thread")
+                .register(registry);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (stream != null) {
+            return;
+        }
+        RecordingStream recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.startAsync();
+        stream = recording;
+        log.info("Reporting virtual threads pinned for more than {}", threshold);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return stream != null;
+    }
+
+    /** Records a pinning and logs its stack if it was not seen before
+     *
+     * @param duration time the virtual thread was blocked while pinned
+     * @param frames stack of the pinned thread, top frame first
+     */
+    void pinned(Duration duration, List<String> frames) {
+        pinnedTimer.record(duration.toNanos(), TimeUnit.NANOSECONDS);
+        String stack = frames.stream().limit(LOGGED_FRAMES).collect(Collectors.joining("\n\tat ", "\tat ", ""));
+        // Only the first occurrence of a stack is logged, a hot pinned path would flood the log otherwise
+        if (reportedStacks.size() < MAX_REPORTED_STACKS && reportedStacks.add(stack)) {
+            log.warn("Virtual thread pinned to its carrier for {} ms\n{}", duration.toMillis(), stack);
+        }
+    }
+
+    /** Number of pinnings recorded since startup */
+    public long pinnedCount() {
+        return pinnedTimer.count();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        List<String> frames = stackTrace == null ? List.of()
+                : stackTrace.getFrames().stream().map(VirtualThreadPinningMonitor::format).toList();
+        pinned(event.getDuration(), frames);
+    }
+
+    private static String format(RecordedFrame frame) {
+        String method = frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+        return frame.getLineNumber() > 0 ? method + ":" + frame.getLineNumber() : method;
+    }
+}
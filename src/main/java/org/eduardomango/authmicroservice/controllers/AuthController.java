@@ -11,25 +11,25 @@ import org.eduardomango.authmicroservice.models.CredentialsEntity;
 import org.eduardomango.authmicroservice.models.auth.*;
 import org.eduardomango.authmicroservice.services.OAuth2ServiceImpl;
 import org.eduardomango.authmicroservice.services.interfaces.AuthService;
-import org.eduardomango.authmicroservice.services.interfaces.JwtService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 
 @Controller
 @RequestMapping("/auth")
 @Tag(name = "Authentication", description = "Operations related to user authentication and account management")
 public class AuthController {
 
-    private final JwtService jwtService;
     private final AuthService authenticationService;
     private final OAuth2ServiceImpl oauth2Service;
 
     @Autowired
-    public AuthController(JwtService jwtService, AuthService authenticationService, OAuth2ServiceImpl oauth2Service) {
-        this.jwtService = jwtService;
+    public AuthController(AuthService authenticationService, OAuth2ServiceImpl oauth2Service) {
         this.authenticationService = authenticationService;
         this.oauth2Service = oauth2Service;
     }
@@ -47,9 +47,7 @@ public class AuthController {
     public ResponseEntity<AuthResponse> authenticate(@RequestBody AuthRequest loginUserDto) {
         CredentialsEntity authenticatedUser = authenticationService.authenticate(loginUserDto);
 
-        String jwtToken = jwtService.generateToken(authenticatedUser);
-
-        return ResponseEntity.ok( new AuthResponse(jwtToken,authenticatedUser.getRefreshToken()));
+        return ResponseEntity.ok(authenticationService.startSession(authenticatedUser));
     }
 
     @Operation(
@@ -67,6 +65,36 @@ public class AuthController {
         return ResponseEntity.ok(response);
     }
 
+    @Operation(
+            summary = "Log out",
+            description = "This endpoint revokes the access token of the request and, when a refresh token is sent, its login session."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Successful logout"),
+            @ApiResponse(responseCode = "401", description = "Invalid access token")
+    })
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestHeader(HttpHeaders.AUTHORIZATION) String authorization,
+                                       @RequestBody(required = false) RefreshTokenRequest request) {
+        authenticationService.logout(authorization.substring(7), request != null ? request.getRefreshToken() : null);
+        return ResponseEntity.noContent().build();
+    }
+
+    @Operation(
+            summary = "Revoke every session of a user",
+            description = "This endpoint revokes every access token and refresh token of a user, like when locking it out."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Sessions revoked"),
+            @ApiResponse(responseCode = "403", description = "Missing the user:update permit")
+    })
+    @PostMapping("/users/{id}/revoke")
+    @PreAuthorize("@permits.has(authentication, 'USER_UPDATE')")
+    public ResponseEntity<Void> revokeSessions(@PathVariable Long id) {
+        authenticationService.revokeSessions(id);
+        return ResponseEntity.noContent().build();
+    }
+
     @Operation(
             summary = "Exchange a GitHub token for a local access token and refresh token",
             description = "This endpoint exchanges a GitHub token for a local access token and refresh token."
@@ -74,16 +102,19 @@ public class AuthController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successful exchange",
                     content = @Content(schema = @Schema(implementation = AuthResponse.class))),
-            @ApiResponse(responseCode = "401", description = "Invalid GitHub token")
+            @ApiResponse(responseCode = "401", description = "Invalid GitHub token"),
+            @ApiResponse(responseCode = "503", description = "GitHub could not be reached"),
+            @ApiResponse(responseCode = "504", description = "GitHub did not answer before the exchange deadline")
     })
     @PostMapping("/exchange/github")
-    public ResponseEntity<AuthResponse> exchangeGithubToken(@RequestBody TokenRequest tokenRequest) {
-        AuthResponse response = oauth2Service.exchangeGithubToken(tokenRequest);
-
-        if (response!=null) {
-            return ResponseEntity.ok(response);
-        }
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    public CompletableFuture<ResponseEntity<AuthResponse>> exchangeGithubToken(@RequestBody TokenRequest tokenRequest) {
+        // The request thread is released while the exchange waits for GitHub on a virtual thread
+        return oauth2Service.exchangeGithubTokenAsync(tokenRequest).thenApply(response -> {
+            if (response!=null) {
+                return ResponseEntity.ok(response);
+            }
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        });
     }
 
     @Operation(
@@ -1,34 +1,71 @@
 package org.eduardomango.authmicroservice.controllers;
 
 import io.swagger.v3.oas.annotations.Operation;
+import org.eduardomango.authmicroservice.config.JwtKey;
 import org.eduardomango.authmicroservice.config.JwtKeyProvider;
-import org.springframework.cache.annotation.Cacheable;
+import org.eduardomango.authmicroservice.config.JwtKeysRotatedEvent;
+import org.eduardomango.authmicroservice.services.impl.TokenDigests;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import com.nimbusds.jose.jwk.RSAKey;
 import com.nimbusds.jose.jwk.JWKSet;
-import java.security.interfaces.RSAPublicKey;
-import java.util.Map;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/.well-known")
 public class JwksController {
   private final JwtKeyProvider keyProvider;
+  private final CacheControl cacheControl;
+
+  /**
+   * JWKS document rendered once per key set, with the strong ETag of its bytes.
+   */
+  private record RenderedJwks(byte[] body, String etag) {
+  }
+
+  private volatile RenderedJwks jwks;
 
-  public JwksController(JwtKeyProvider keyProvider) {
+  public JwksController(JwtKeyProvider keyProvider,
+                        @Value("${jwt.keys.jwks-max-age:${jwt.keys.refresh-interval:PT1M}}") Duration maxAge) {
     this.keyProvider = keyProvider;
+    // A new key signs only once this max age has passed since every node published it, see JwtKeyProvider.promotionDelay
+    this.cacheControl = CacheControl.maxAge(maxAge).cachePublic();
+    this.jwks = render();
   }
 
   @Operation(
           summary = "Get JSON Web Key Set (JWKS)",
-          description = "This endpoint returns a JSON Web Key Set (JWKS) containing the public key used to sign JWT tokens."
+          description = "This endpoint returns a JSON Web Key Set (JWKS) containing every public key that can verify JWT tokens, identified by their kid. " +
+                  "Responses carry an ETag, requests with a matching If-None-Match get an empty 304."
   )
-  @Cacheable("jwksCache")
   @GetMapping("/jwks.json")
-  public Map<String, Object> getJwks() {
-    RSAPublicKey publicKey = (RSAPublicKey) keyProvider.getPublicKey();
-    RSAKey jwk = new RSAKey.Builder(publicKey).keyID("rsa-key").build();
-      return new JWKSet(jwk).toJSONObject();
+  public ResponseEntity<byte[]> getJwks() {
+    RenderedJwks current = this.jwks;
+    // A matching If-None-Match is answered with a 304 by Spring MVC, without writing the body
+    return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .eTag(current.etag())
+            .cacheControl(cacheControl)
+            .body(current.body());
+  }
+
+  @EventListener
+  public void onKeysRotated(JwtKeysRotatedEvent event) {
+    this.jwks = render();
+  }
+
+  private RenderedJwks render() {
+    String json = new JWKSet(keyProvider.getVerificationKeys().stream()
+            .map(JwtKey::toPublicJwk)
+            .toList())
+            .toString();
+    return new RenderedJwks(json.getBytes(StandardCharsets.UTF_8), "\"" + TokenDigests.sha256Key(json) + "\"");
   }
 }
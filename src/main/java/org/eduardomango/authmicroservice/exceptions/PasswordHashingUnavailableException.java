@@ -0,0 +1,16 @@
+package org.eduardomango.authmicroservice.exceptions;
+
+import java.time.Duration;
+
+public class PasswordHashingUnavailableException extends RuntimeException {
+  private final Duration retryAfter;
+
+  public PasswordHashingUnavailableException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
@@ -1,10 +1,14 @@
 package org.eduardomango.authmicroservice.exceptions.handler;
 
+import org.eduardomango.authmicroservice.exceptions.PasswordHashingUnavailableException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.client.ResourceAccessException;
 
+import java.net.SocketTimeoutException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,5 +22,21 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
     }
 
+    @ExceptionHandler(PasswordHashingUnavailableException.class)
+    public ResponseEntity<Map<String,String>> handlePasswordHashingUnavailableException(PasswordHashingUnavailableException e) {
+        Map<String,String> response = new HashMap<>();
+        response.put("message", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(response);
+    }
 
+    @ExceptionHandler(ResourceAccessException.class)
+    public ResponseEntity<Map<String,String>> handleResourceAccessException(ResourceAccessException e) {
+        // An upstream service like GitHub that did not answer in time is a gateway timeout, one that could not be reached is unavailable
+        boolean timedOut = e.getCause() instanceof SocketTimeoutException;
+        Map<String,String> response = new HashMap<>();
+        response.put("message", timedOut ? "Upstream service did not answer in time" : "Upstream service unavailable");
+        return ResponseEntity.status(timedOut ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.SERVICE_UNAVAILABLE).body(response);
+    }
 }
@@ -0,0 +1,119 @@
+package org.eduardomango.authmicroservice.models;
+
+import org.eduardomango.authmicroservice.models.Enum.UserPermit;
+import org.eduardomango.authmicroservice.models.Enum.UserRole;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Authorities of the roles and permits. Every role and permit has a single shared authority instance,
+ * so the authorities built from roles or from token claims allocate none.
+ */
+public final class Authorities {
+
+    private static final UserRole[] ROLES = UserRole.values();
+    private static final GrantedAuthority[] ROLE_AUTHORITIES = new GrantedAuthority[ROLES.length];
+    private static final UserPermit[] PERMITS = UserPermit.values();
+    private static final GrantedAuthority[] PERMIT_AUTHORITIES = new GrantedAuthority[PERMITS.length];
+    private static final Map<String, GrantedAuthority> AUTHORITIES_BY_NAME = new HashMap<>();
+
+    static {
+        for (UserRole role : ROLES) {
+            ROLE_AUTHORITIES[role.ordinal()] = new SimpleGrantedAuthority(role.name());
+            AUTHORITIES_BY_NAME.put(role.name(), ROLE_AUTHORITIES[role.ordinal()]);
+        }
+        for (UserPermit permit : PERMITS) {
+            PERMIT_AUTHORITIES[permit.ordinal()] = new SimpleGrantedAuthority(permit.getCode());
+            AUTHORITIES_BY_NAME.put(permit.getCode(), PERMIT_AUTHORITIES[permit.ordinal()]);
+        }
+    }
+
+    private Authorities() {
+    }
+
+    /** Computes the authorities of a user: the roles of its profile, its direct roles and the permits of all of them
+     *
+     * @param profile profile of the user, may be null
+     * @param directRoles roles assigned directly to the user
+     * @return the immutable authorities, roles first then permits, both in declaration order
+     */
+    public static List<GrantedAuthority> of(ProfileEntity profile, Collection<RoleEntity> directRoles) {
+        boolean[] roles = new boolean[ROLES.length];
+        boolean[] permits = new boolean[PERMITS.length];
+        if (profile != null) {
+            addRoles(profile.getRoles(), roles, permits);
+        }
+        addRoles(directRoles, roles, permits);
+
+        // Roles first, then permits, both in declaration order so tokens list them in a stable order
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        for (int i = 0; i < roles.length; i++) {
+            if (roles[i]) {
+                authorities.add(ROLE_AUTHORITIES[i]);
+            }
+        }
+        for (int i = 0; i < permits.length; i++) {
+            if (permits[i]) {
+                authorities.add(PERMIT_AUTHORITIES[i]);
+            }
+        }
+        return List.copyOf(authorities);
+    }
+
+    /** Shared authority instance of a role name or permit code
+     *
+     * @param name role name or permit code
+     * @return the shared authority, or a new one for names that are neither a role nor a permit
+     */
+    public static GrantedAuthority authority(String name) {
+        GrantedAuthority authority = AUTHORITIES_BY_NAME.get(name);
+        return authority != null ? authority : new SimpleGrantedAuthority(name);
+    }
+
+    /** Permission mask of a set of authorities
+     *
+     * @param authorities roles and permits of a user
+     * @return the mask with the bit of every permit among the authorities
+     */
+    public static long permitMask(Collection<? extends GrantedAuthority> authorities) {
+        long mask = 0;
+        for (GrantedAuthority authority : authorities) {
+            UserPermit permit = UserPermit.fromCode(authority.getAuthority());
+            if (permit != null) {
+                mask |= permit.mask();
+            }
+        }
+        return mask;
+    }
+
+    /** Shared authorities of the permits of a permission mask
+     *
+     * @param mask permission mask
+     * @return the authorities of the permits whose bit is set
+     */
+    public static List<GrantedAuthority> permitAuthorities(long mask) {
+        if (mask == 0) {
+            return List.of();
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>(Long.bitCount(mask));
+        for (UserPermit permit : PERMITS) {
+            if ((mask & permit.mask()) != 0) {
+                authorities.add(PERMIT_AUTHORITIES[permit.ordinal()]);
+            }
+        }
+        return authorities;
+    }
+
+    private static void addRoles(Collection<RoleEntity> source, boolean[] roles, boolean[] permits) {
+        for (RoleEntity role : source) {
+            roles[role.getRole().ordinal()] = true;
+            role.getPermits().forEach(permit -> permits[permit.getPermit().ordinal()] = true);
+        }
+    }
+}
@@ -6,12 +6,12 @@ import jakarta.validation.constraints.Size;
 import lombok.*;
 import org.hibernate.validator.constraints.Length;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 @Entity
@@ -22,8 +22,24 @@ import java.util.Set;
 @AllArgsConstructor
 @NoArgsConstructor
 @ToString
+@NamedEntityGraph(name = CredentialsEntity.AUTHORITIES_GRAPH, attributeNodes = {
+        @NamedAttributeNode("profile"),
+        @NamedAttributeNode("roles")
+})
+@NamedEntityGraph(name = CredentialsEntity.FULL_GRAPH, attributeNodes = {
+        @NamedAttributeNode(value = "profile", subgraph = "profileRoles"),
+        @NamedAttributeNode(value = "roles", subgraph = "rolePermits")
+}, subgraphs = {
+        @NamedSubgraph(name = "profileRoles", attributeNodes = @NamedAttributeNode(value = "roles", subgraph = "rolePermits")),
+        @NamedSubgraph(name = "rolePermits", attributeNodes = @NamedAttributeNode("permits"))
+})
 public class CredentialsEntity implements UserDetails {
 
+    /** Fetch plan of the paths that need the authorities: the profile and the direct roles, in a single query */
+    public static final String AUTHORITIES_GRAPH = "CredentialsEntity.authorities";
+    /** Fetch plan of the admin views: the whole profile, role and permit tree joined in a single query */
+    public static final String FULL_GRAPH = "CredentialsEntity.full";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long id;
@@ -40,14 +56,13 @@ public class CredentialsEntity implements UserDetails {
 //    @Column(nullable = false)
     String password;
 
-    @ManyToOne(cascade = CascadeType.MERGE)
+    @ManyToOne(cascade = CascadeType.MERGE, fetch = FetchType.LAZY)
     @JoinColumn(name = "profile_id")
+    @ToString.Exclude
     private ProfileEntity profile;
 
-    @Column(name = "refresh_token",length = 2048,unique = true, nullable = false)
-    private String refreshToken;
-
-    @ManyToMany(cascade = CascadeType.MERGE, fetch = FetchType.EAGER)
+    @ManyToMany(cascade = CascadeType.MERGE, fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinTable(
             name = "credentials_roles",
             joinColumns = @JoinColumn(name = "credential_id"),
@@ -64,12 +79,19 @@ public class CredentialsEntity implements UserDetails {
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
+    // Set by the AuthorityResolver when the user is loaded, never stored
+    @Transient
+    @ToString.Exclude
+    private List<GrantedAuthority> authorities;
+
+    /** Roles of the profile, direct roles and the permits of all of them
+     *
+     * @return the shared, immutable authorities resolved when the user was loaded,
+     * computed from its roles for a user that was not loaded through the user services
+     */
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        Set<GrantedAuthority> authorities = new HashSet<>();
-        profile.getRoles().forEach(rol -> authorities.add(new SimpleGrantedAuthority(rol.getRole().name())));
-        roles.forEach(rol -> authorities.add(new SimpleGrantedAuthority(rol.getRole().name())));
-        return authorities;
+        return authorities != null ? authorities : Authorities.of(profile, roles);
     }
 
     @Override
@@ -1,49 +1,107 @@
 package org.eduardomango.authmicroservice.models.Enum;
 
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
 public enum UserPermit {
     // Gestión de usuarios
-    USER_READ("user:read"),
-    USER_READ_SELF("user:read_self"),
-    USER_UPDATE("user:update"),         // Actualizar información de usuarios
-    USER_DELETE("user:delete"),         // Eliminar cuentas de usuario
+    USER_READ("user:read", 0),
+    USER_READ_SELF("user:read_self", 1),
+    USER_UPDATE("user:update", 2),         // Actualizar información de usuarios
+    USER_DELETE("user:delete", 3),         // Eliminar cuentas de usuario
 
     // Gestión de productos
-    PRODUCT_CREATE("product:create"),   // Crear productos
-    PRODUCT_READ("product:read"),       // Ver productos
-    PRODUCT_UPDATE("product:update"),   // Actualizar productos
-    PRODUCT_DELETE("product:delete"),   // Eliminar productos
+    PRODUCT_CREATE("product:create", 4),   // Crear productos
+    PRODUCT_READ("product:read", 5),       // Ver productos
+    PRODUCT_UPDATE("product:update", 6),   // Actualizar productos
+    PRODUCT_DELETE("product:delete", 7),   // Eliminar productos
 
     // Gestión de pedidos
-    ORDER_CREATE("order:create"),       // Crear pedidos
-    ORDER_READ("order:read"),           // Ver pedidos
-    ORDER_UPDATE("order:update"),       // Actualizar pedidos
-    ORDER_DELETE("order:delete"),       // Cancelar pedidos
+    ORDER_CREATE("order:create", 8),       // Crear pedidos
+    ORDER_READ("order:read", 9),           // Ver pedidos
+    ORDER_UPDATE("order:update", 10),       // Actualizar pedidos
+    ORDER_DELETE("order:delete", 11),       // Cancelar pedidos
 
     // Gestión de inventario
-    INVENTORY_READ("inventory:read"),   // Ver inventario
-    INVENTORY_UPDATE("inventory:update"), // Actualizar inventario
+    INVENTORY_READ("inventory:read", 12),   // Ver inventario
+    INVENTORY_UPDATE("inventory:update", 13), // Actualizar inventario
 
     // Gestión de reseñas y disputas
-    REVIEW_MODERATE("review:moderate"), // Moderar reseñas
-    DISPUTE_MANAGE("dispute:manage"),   // Gestionar disputas
+    REVIEW_MODERATE("review:moderate", 14), // Moderar reseñas
+    DISPUTE_MANAGE("dispute:manage", 15),   // Gestionar disputas
 
     // Notificaciones y soporte
-    NOTIFICATION_SEND("notification:send"), // Enviar notificaciones
-    SUPPORT_RESPOND("support:respond"), // Responder a tickets de soporte
+    NOTIFICATION_SEND("notification:send", 16), // Enviar notificaciones
+    SUPPORT_RESPOND("support:respond", 17), // Responder a tickets de soporte
 
     // Gestión de contenido general
-    CONTENT_CREATE("content:create"),   // Crear contenido (banners, páginas, etc.)
-    CONTENT_READ("content:read"),       // Leer contenido
-    CONTENT_UPDATE("content:update"),   // Actualizar contenido
-    CONTENT_DELETE("content:delete");   // Eliminar contenido
+    CONTENT_CREATE("content:create", 18),   // Crear contenido (banners, páginas, etc.)
+    CONTENT_READ("content:read", 19),       // Leer contenido
+    CONTENT_UPDATE("content:update", 20),   // Actualizar contenido
+    CONTENT_DELETE("content:delete", 21);   // Eliminar contenido
+
+    /** Version of the bit assignment, carried by tokens so a token of another assignment grants no permit */
+    public static final int BITS_VERSION = 1;
+
+    private static final Map<String, UserPermit> BY_CODE = new HashMap<>();
+
+    static {
+        long assigned = 0;
+        for (UserPermit permit : values()) {
+            if (permit.bit < 0 || permit.bit > 63 || (assigned & permit.mask()) != 0) {
+                throw new IllegalStateException("Invalid or duplicated permission bit of " + permit);
+            }
+            assigned |= permit.mask();
+            BY_CODE.put(permit.code, permit);
+        }
+    }
 
     private final String code;
+    private final int bit;
 
-    UserPermit(String code) {
+    UserPermit(String code, int bit) {
         this.code = code;
+        this.bit = bit;
     }
 
     public String getCode() {
         return code;
     }
+
+    /**
+     * Bit of the permit in the permission mask of tokens. Bits are stable: a new permit takes a new bit
+     * and the bit of a removed permit is never reused without bumping {@link #BITS_VERSION}.
+     */
+    public int getBit() {
+        return bit;
+    }
+
+    public long mask() {
+        return 1L << bit;
+    }
+
+    /** Finds a permit by its code
+     *
+     * @param code of the permit, like user:read
+     * @return the permit, or null if no permit has that code
+     */
+    public static UserPermit fromCode(String code) {
+        return BY_CODE.get(code);
+    }
+
+    /** Permits of a permission mask
+     *
+     * @param mask permission mask of the current bit assignment
+     * @return the permits whose bit is set
+     */
+    public static EnumSet<UserPermit> fromMask(long mask) {
+        EnumSet<UserPermit> permits = EnumSet.noneOf(UserPermit.class);
+        for (UserPermit permit : values()) {
+            if ((mask & permit.mask()) != 0) {
+                permits.add(permit);
+            }
+        }
+        return permits;
+    }
 }
@@ -0,0 +1,44 @@
+package org.eduardomango.authmicroservice.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+
+import java.time.Instant;
+
+/**
+ * Invalidation event published to the other nodes. Notifications are only delivered to the nodes listening
+ * at that moment, so events are also kept here for a node to replay the ones it missed while disconnected.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "invalidation_events", indexes = {
+        @Index(name = "idx_invalidation_events_created_at", columnList = "created_at")
+})
+public class InvalidationEventEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private InvalidationEvent.Type type;
+
+    @Column(name = "event_key")
+    private String key;
+
+    @Column(nullable = false)
+    private Instant at;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public InvalidationEvent toEvent() {
+        return new InvalidationEvent(type, key, at);
+    }
+}
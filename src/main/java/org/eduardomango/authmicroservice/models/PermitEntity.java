@@ -1,6 +1,8 @@
 package org.eduardomango.authmicroservice.models;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.*;
 import org.eduardomango.authmicroservice.models.Enum.UserPermit;
 
@@ -10,6 +12,7 @@ import org.eduardomango.authmicroservice.models.Enum.UserPermit;
 @NoArgsConstructor
 @Entity
 @Table(name = "permits")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @AllArgsConstructor
 public class PermitEntity {
 
@@ -1,6 +1,8 @@
 package org.eduardomango.authmicroservice.models;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import org.eduardomango.authmicroservice.models.Enum.UserProfile;
@@ -12,6 +14,7 @@ import java.util.Set;
 @Getter
 @Entity
 @Table(name = "profiles")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
 
 public class ProfileEntity {
@@ -24,6 +27,7 @@ public class ProfileEntity {
   @Column(nullable = false, unique = true)
   private UserProfile profile;
 
+  @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
   @ManyToMany(cascade = CascadeType.MERGE, fetch = FetchType.EAGER)
   @JoinTable(
           name = "profile_roles",
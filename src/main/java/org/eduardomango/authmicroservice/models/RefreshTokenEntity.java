@@ -0,0 +1,62 @@
+package org.eduardomango.authmicroservice.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Refresh token issued to a user, one per login session and device. Only the SHA-256 digest of the token is stored,
+ * so the unique index holds fixed-size 32-byte keys and a refresh is a single probe of that index.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "idx_refresh_tokens_credential", columnList = "credential_id"),
+        @Index(name = "idx_refresh_tokens_family", columnList = "family_id"),
+        @Index(name = "idx_refresh_tokens_expires_at", columnList = "expires_at")
+})
+public class RefreshTokenEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "token_hash", nullable = false, unique = true, length = 32)
+    private byte[] tokenHash;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "credential_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    private CredentialsEntity credentials;
+
+    /** Login session of the token, shared by every token rotated from the same login */
+    @Column(name = "family_id", nullable = false)
+    private UUID familyId;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    /** When the token was replaced by a new one, it is still honoured during the grace period after that */
+    @Column(name = "rotated_at")
+    private Instant rotatedAt;
+
+    /** Token that replaced this one, sealed with a key derived from this token, so only its holder can read it back */
+    @Column(name = "successor_token", length = 2048)
+    private byte[] successorToken;
+
+    @Version
+    @Column(nullable = false)
+    private long version;
+}
@@ -0,0 +1,11 @@
+package org.eduardomango.authmicroservice.models.auth;
+
+/**
+ * Email address of a GitHub user, as listed by GET /user/emails.
+ *
+ * @param email the address
+ * @param primary true for the primary address of the user
+ * @param verified true if the user verified the address
+ */
+public record GithubEmail(String email, boolean primary, boolean verified) {
+}
@@ -0,0 +1,35 @@
+package org.eduardomango.authmicroservice.models.auth;
+
+import java.time.Instant;
+
+/**
+ * Change that every node has to apply to its local caches, published locally and to the other nodes.
+ * Applying an event more than once has the same effect as applying it once.
+ *
+ * @param type what changed
+ * @param key jti of the revoked token, username of the revoked subject, null for reference data changes
+ * @param at expiration of the revoked token, moment of a subject revocation or moment of a reference data change
+ */
+public record InvalidationEvent(Type type, String key, Instant at) {
+
+    public enum Type {
+        /** A single access token was revoked */
+        TOKEN,
+        /** Every access token of a user issued up to the event was revoked */
+        SUBJECT,
+        /** Profiles, roles or permits changed */
+        REFERENCE_DATA
+    }
+
+    public static InvalidationEvent token(VerifiedToken token) {
+        return new InvalidationEvent(Type.TOKEN, token.id().toString(), token.expiresAt());
+    }
+
+    public static InvalidationEvent subject(String subject, Instant revokedAt) {
+        return new InvalidationEvent(Type.SUBJECT, subject, revokedAt);
+    }
+
+    public static InvalidationEvent referenceData() {
+        return new InvalidationEvent(Type.REFERENCE_DATA, null, Instant.now());
+    }
+}
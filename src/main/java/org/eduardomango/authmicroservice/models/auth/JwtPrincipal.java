@@ -0,0 +1,60 @@
+package org.eduardomango.authmicroservice.models.auth;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.eduardomango.authmicroservice.models.Authorities;
+import org.eduardomango.authmicroservice.models.Enum.UserPermit;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Principal of a request authenticated with a JWT.
+ * Contains only the username, authorities and permission mask, never the password.
+ *
+ * @param username of the authenticated user
+ * @param authorities granted to the user
+ * @param permits permission mask of the user, see {@link UserPermit#mask()}
+ */
+public record JwtPrincipal(String username, Collection<? extends GrantedAuthority> authorities, long permits)
+        implements AuthenticatedPrincipal {
+
+    /** Builds a principal from the claims of a verified token, without touching the database
+     *
+     * @param token verified token of the request
+     * @return principal with the roles and permits of the token as authorities
+     */
+    public static JwtPrincipal fromToken(VerifiedToken token) {
+        List<GrantedAuthority> authorities = new ArrayList<>(token.roles().size() + Long.bitCount(token.permits()));
+        token.roles().forEach(role -> authorities.add(Authorities.authority(role)));
+        authorities.addAll(Authorities.permitAuthorities(token.permits()));
+        return new JwtPrincipal(token.subject(), Collections.unmodifiableList(authorities), token.permits());
+    }
+
+    /** Builds a principal from a user loaded from the database, dropping its password
+     *
+     * @param userDetails of the authenticated user
+     * @return principal with the authorities of the user
+     */
+    public static JwtPrincipal fromUserDetails(UserDetails userDetails) {
+        return new JwtPrincipal(userDetails.getUsername(), List.copyOf(userDetails.getAuthorities()),
+                Authorities.permitMask(userDetails.getAuthorities()));
+    }
+
+    /** Checks a permit with a single mask test
+     *
+     * @param permit to check
+     * @return true if the user has the permit
+     */
+    public boolean hasPermit(UserPermit permit) {
+        return (permits & permit.mask()) != 0;
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
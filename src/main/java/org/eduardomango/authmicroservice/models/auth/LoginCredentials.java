@@ -0,0 +1,34 @@
+package org.eduardomango.authmicroservice.models.auth;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Projection of the credentials needed to check a password, read from the credentials table alone.
+ * Authorities are not part of the projection, they are loaded only once the password matched.
+ *
+ * @param id of the credentials
+ * @param username of the user
+ * @param password hash of the password
+ * @param profileId id of the profile of the user
+ */
+public record LoginCredentials(Long id, String username, String password, Long profileId) implements UserDetails {
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return List.of();
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+}
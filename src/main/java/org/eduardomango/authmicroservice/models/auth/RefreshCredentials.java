@@ -0,0 +1,24 @@
+package org.eduardomango.authmicroservice.models.auth;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Projection of a stored refresh token, read from the refresh token table alone by the digest of the token.
+ *
+ * @param tokenId id of the stored refresh token
+ * @param credentialsId id of the credentials of the user the token was issued to
+ * @param familyId login session of the token
+ * @param expiresAt expiration of the token
+ * @param rotatedAt when the token was replaced by a new one, null while it is the current token of its session
+ * @param version version of the row when read, only the first of concurrent rotations sets the rotation time
+ * @param successorToken token that replaced this one, sealed with a key derived from this token, null until rotated
+ */
+public record RefreshCredentials(Long tokenId, Long credentialsId, UUID familyId, Instant expiresAt,
+                                 Instant rotatedAt, long version, byte[] successorToken) {
+
+    public RefreshCredentials(Long tokenId, Long credentialsId, UUID familyId, Instant expiresAt,
+                              Instant rotatedAt, long version) {
+        this(tokenId, credentialsId, familyId, expiresAt, rotatedAt, version, null);
+    }
+}
@@ -0,0 +1,29 @@
+package org.eduardomango.authmicroservice.models.auth;
+
+import org.eduardomango.authmicroservice.models.Enum.UserPermit;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Result of a single signature verification of a JWT.
+ * Holds the claims needed along the request so the token does not have to be parsed again.
+ *
+ * @param subject username the token was issued to
+ * @param id jti of the token, null for tokens issued before tokens had one
+ * @param issuedAt moment the token was issued, to the millisecond, or to the second for tokens without an iat_ms claim
+ * @param expiresAt moment the token expires
+ * @param roles roles claim of the token, empty for refresh tokens
+ * @param permits permission mask of the token, see {@link UserPermit#mask()}, 0 for refresh tokens
+ */
+public record VerifiedToken(String subject, UUID id, Instant issuedAt, Instant expiresAt, List<String> roles, long permits) {
+
+    public boolean hasPermit(UserPermit permit) {
+        return (permits & permit.mask()) != 0;
+    }
+
+    public boolean isExpired() {
+        return expiresAt.isBefore(Instant.now());
+    }
+}
@@ -1,9 +1,15 @@
 package org.eduardomango.authmicroservice.repositories;
 
 import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.auth.LoginCredentials;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -15,5 +21,27 @@ public interface CredentialsRepository
 
     Optional<CredentialsEntity> findByOauth2ProviderId(String oauth2ProviderId);
 
-    Optional<CredentialsEntity> findByRefreshToken(String refreshToken);
+    /** Login fetch plan: only the columns needed to check a password, without any join */
+    @Query("select new org.eduardomango.authmicroservice.models.auth.LoginCredentials(c.id, c.username, c.password, c.profile.profile_id) " +
+            "from CredentialsEntity c where c.username = :username")
+    Optional<LoginCredentials> findLoginByUsername(@Param("username") String username);
+
+    /**
+     * Fetch plan of the paths that need the authorities of the user, like token issuing. Loaded as a load graph
+     * so the roles of the profile and their permits keep their eager fetch, served from the second-level cache.
+     */
+    @EntityGraph(value = CredentialsEntity.AUTHORITIES_GRAPH, type = EntityGraph.EntityGraphType.LOAD)
+    Optional<CredentialsEntity> findWithAuthoritiesByUsername(String username);
+
+    @EntityGraph(value = CredentialsEntity.AUTHORITIES_GRAPH, type = EntityGraph.EntityGraphType.LOAD)
+    Optional<CredentialsEntity> findWithAuthoritiesById(Long id);
+
+    /** Fetch plan of the admin views, with the whole profile, role and permit tree */
+    @EntityGraph(CredentialsEntity.FULL_GRAPH)
+    Optional<CredentialsEntity> findDetailedById(Long id);
+
+    @Transactional
+    @Modifying
+    @Query("update CredentialsEntity c set c.password = :password where c.id = :id")
+    int updatePassword(@Param("id") Long id, @Param("password") String password);
 }
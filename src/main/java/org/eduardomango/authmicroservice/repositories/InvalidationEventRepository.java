@@ -0,0 +1,23 @@
+package org.eduardomango.authmicroservice.repositories;
+
+import org.eduardomango.authmicroservice.models.InvalidationEventEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface InvalidationEventRepository extends JpaRepository<InvalidationEventEntity, Long> {
+
+    List<InvalidationEventEntity> findByCreatedAtGreaterThanEqualOrderByIdAsc(Instant createdAt);
+
+    @Transactional
+    @Modifying
+    @Query("delete from InvalidationEventEntity e where e.createdAt < :createdBefore")
+    int deleteCreatedBefore(@Param("createdBefore") Instant createdBefore);
+}
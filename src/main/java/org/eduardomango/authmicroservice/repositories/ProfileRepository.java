@@ -1,9 +1,12 @@
 package org.eduardomango.authmicroservice.repositories;
 
+import jakarta.persistence.QueryHint;
 import org.eduardomango.authmicroservice.models.Enum.UserProfile;
 import org.eduardomango.authmicroservice.models.ProfileEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -12,5 +15,7 @@ import java.util.Optional;
 public interface ProfileRepository
     extends JpaRepository<ProfileEntity, Long>, JpaSpecificationExecutor<ProfileEntity> {
 
+    // Profiles almost never change, the lookup is served from the query cache
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"))
     Optional<ProfileEntity> findByProfile(UserProfile profile);
 }
@@ -0,0 +1,54 @@
+package org.eduardomango.authmicroservice.repositories;
+
+import org.eduardomango.authmicroservice.models.RefreshTokenEntity;
+import org.eduardomango.authmicroservice.models.auth.RefreshCredentials;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshTokenEntity, Long> {
+
+    /** Refresh fetch plan: a single probe of the token hash index, without any join */
+    @Query("select new org.eduardomango.authmicroservice.models.auth.RefreshCredentials(t.id, t.credentials.id, t.familyId, t.expiresAt, t.rotatedAt, t.version, t.successorToken) " +
+            "from RefreshTokenEntity t where t.tokenHash = :tokenHash")
+    Optional<RefreshCredentials> findCredentialsByTokenHash(@Param("tokenHash") byte[] tokenHash);
+
+    /** Marks a refresh token as rotated and records its successor, only if nobody rotated it since it was read
+     *
+     * @return 1 if the token was marked, 0 if a concurrent refresh changed its version first
+     */
+    @Transactional
+    @Modifying
+    @Query("update RefreshTokenEntity t set t.rotatedAt = :now, t.successorToken = :successor, t.version = t.version + 1 " +
+            "where t.id = :id and t.version = :version")
+    int markRotated(@Param("id") Long id, @Param("version") long version, @Param("now") Instant now,
+                    @Param("successor") byte[] successor);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshTokenEntity t where t.tokenHash = :tokenHash")
+    int deleteByTokenHash(@Param("tokenHash") byte[] tokenHash);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshTokenEntity t where t.familyId = :familyId")
+    int deleteFamily(@Param("familyId") UUID familyId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshTokenEntity t where t.credentials.id = :credentialsId")
+    int deleteByCredentialsId(@Param("credentialsId") Long credentialsId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshTokenEntity t where t.expiresAt < :now or t.rotatedAt < :rotatedBefore")
+    int deleteExpired(@Param("now") Instant now, @Param("rotatedBefore") Instant rotatedBefore);
+}
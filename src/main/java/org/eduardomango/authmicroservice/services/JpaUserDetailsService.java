@@ -4,10 +4,12 @@ import org.eduardomango.authmicroservice.models.CredentialsEntity;
 import org.eduardomango.authmicroservice.models.Enum.UserProfile;
 import org.eduardomango.authmicroservice.models.ProfileEntity;
 import org.eduardomango.authmicroservice.models.auth.GithubUserResponse;
+import org.eduardomango.authmicroservice.models.auth.LoginCredentials;
 import org.eduardomango.authmicroservice.repositories.CredentialsRepository;
 import org.eduardomango.authmicroservice.repositories.ProfileRepository;
-import org.eduardomango.authmicroservice.services.interfaces.JwtService;
+import org.eduardomango.authmicroservice.services.impl.AuthorityResolver;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -15,27 +17,27 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 
 @Service
-public class JpaUserDetailsService implements UserDetailsService {
+public class JpaUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final CredentialsRepository credentialsRepository;
     private final ProfileRepository profileRepository;
-    private final JwtService tokenProvider;
+    private final AuthorityResolver authorityResolver;
 
-    public JpaUserDetailsService(CredentialsRepository credentialsRepository, ProfileRepository profileRepository, JwtService tokenProvider) {
+    public JpaUserDetailsService(CredentialsRepository credentialsRepository, ProfileRepository profileRepository, AuthorityResolver authorityResolver) {
         this.credentialsRepository = credentialsRepository;
         this.profileRepository = profileRepository;
-        this.tokenProvider = tokenProvider;
+        this.authorityResolver = authorityResolver;
     }
 
     /** Retrieves the credentials of a user authenticated via GitHub
      * If not present in database (new user), creates a new user and stores it in the database
      *
      * @param githubUser user authenticated via GitHub
-     * @return credentials of the user
+     * @return credentials of the user, with its authorities resolved
      */
     public CredentialsEntity findOrCreateUser(GithubUserResponse githubUser) {
-    return credentialsRepository
-        .findByUsername(githubUser.getLogin())
+    CredentialsEntity user = credentialsRepository
+        .findWithAuthoritiesByUsername(githubUser.getLogin())
         .orElseGet(
             () -> {
               // create local user
@@ -50,21 +52,51 @@ public class JpaUserDetailsService implements UserDetailsService {
                       .findByProfile(UserProfile.CUSTOMER)
                       .orElse(new ProfileEntity(UserProfile.CUSTOMER));
               newUser.setProfile(profile);
-
-              String refreshToken = tokenProvider.generateRefreshToken(newUser);
-              newUser.setRefreshToken(refreshToken);
               return credentialsRepository.save(newUser);
             });
+    return authorityResolver.withAuthorities(user);
     }
 
     /**
-     * Retrieves a user from the database based on the provided username.
+     * Retrieves a user from the database based on the provided username,
+     * with its profile and roles fetched so its authorities can be resolved outside of a transaction.
      * @param username of the user to be retrieved
      * @return the user details of the user
      * @throws UsernameNotFoundException when the user is not found
      */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        return credentialsRepository.findByUsername(username).orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        return authorityResolver.withAuthorities(credentialsRepository.findWithAuthoritiesByUsername(username)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found")));
+    }
+
+    /**
+     * Retrieves only what is needed to check the password of a user, used by the login.
+     * @param username of the user to be retrieved
+     * @return the username, password hash and profile id of the user, without authorities
+     * @throws UsernameNotFoundException when the user is not found
+     */
+    public UserDetails loadLoginCredentials(String username) throws UsernameNotFoundException {
+        return credentialsRepository.findLoginByUsername(username).orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    }
+
+    /**
+     * Stores the new hash of a password whose hash used an outdated algorithm or cost.
+     * Called by the authentication manager after a successful login, with the password hashed again.
+     * @param user the authenticated user
+     * @param newPassword the new hash of the password
+     * @return the user with the new hash
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        if (user instanceof LoginCredentials login) {
+            credentialsRepository.updatePassword(login.id(), newPassword);
+            return new LoginCredentials(login.id(), login.username(), newPassword, login.profileId());
+        }
+        CredentialsEntity credentials = user instanceof CredentialsEntity entity
+                ? entity
+                : credentialsRepository.findByUsername(user.getUsername()).orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        credentials.setPassword(newPassword);
+        return credentialsRepository.save(credentials);
     }
 }
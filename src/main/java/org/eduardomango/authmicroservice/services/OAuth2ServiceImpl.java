@@ -2,62 +2,183 @@ package org.eduardomango.authmicroservice.services;
 
 import org.eduardomango.authmicroservice.models.CredentialsEntity;
 import org.eduardomango.authmicroservice.models.auth.AuthResponse;
+import org.eduardomango.authmicroservice.models.auth.GithubEmail;
 import org.eduardomango.authmicroservice.models.auth.GithubUserResponse;
 import org.eduardomango.authmicroservice.models.auth.TokenRequest;
-import org.eduardomango.authmicroservice.services.interfaces.JwtService;
+import org.eduardomango.authmicroservice.services.impl.AuthMetrics;
+import org.eduardomango.authmicroservice.services.impl.AuthenticationEvent;
+import org.eduardomango.authmicroservice.services.impl.GithubUserCache;
+import org.eduardomango.authmicroservice.services.interfaces.AuthService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 @Service
 public class OAuth2ServiceImpl {
 
     private final JpaUserDetailsService userDetailsService;
-    private final JwtService jwtService;
+    private final AuthService authService;
     private final RestTemplate restTemplate;
+    private final GithubUserCache githubUserCache;
+    private final AuthMetrics metrics;
+    private final ExecutorService githubExecutor;
+    private final Duration exchangeTimeout;
+    private final boolean prefetchEmails;
 
-    public OAuth2ServiceImpl(JpaUserDetailsService userDetailsService, JwtService jwtService, RestTemplate restTemplate) {
+    public OAuth2ServiceImpl(JpaUserDetailsService userDetailsService, AuthService authService, RestTemplate restTemplate, GithubUserCache githubUserCache,
+                             AuthMetrics metrics,
+                             @Qualifier("githubExecutor") ExecutorService githubExecutor,
+                             @Value("${github.exchange.timeout:PT5S}") Duration exchangeTimeout,
+                             @Value("${github.exchange.prefetch-emails:true}") boolean prefetchEmails) {
         this.userDetailsService = userDetailsService;
-        this.jwtService = jwtService;
+        this.authService = authService;
         this.restTemplate = restTemplate;
+        this.githubUserCache = githubUserCache;
+        this.metrics = metrics;
+        this.githubExecutor = githubExecutor;
+        this.exchangeTimeout = exchangeTimeout;
+        this.prefetchEmails = prefetchEmails;
+    }
+
+    /** Exchanges a GitHub token for a local access token and refresh token on a virtual thread,
+     * so no request thread waits for GitHub
+     *
+     * @param tokenRequest token generated by GitHub for authentication
+     * @return completes with the AuthResponse, or null if GitHub rejected the token, or exceptionally with a
+     * ResourceAccessException if GitHub could not be reached or did not answer before the exchange deadline
+     */
+    public CompletableFuture<AuthResponse> exchangeGithubTokenAsync(TokenRequest tokenRequest) {
+        return CompletableFuture.supplyAsync(() -> exchangeGithubToken(tokenRequest), githubExecutor);
     }
 
-    /** Exchanges a GitHub token for a local access token and refresh token
+    /** Exchanges a GitHub token for a local access token and refresh token.
+     * GitHub is called through the pooled client of GithubClientConfig, bounded by its timeouts,
+     * and only once per token within the ttl of the GitHub user cache. Timed in auth.github.exchange
+     * and recorded as an {@link AuthenticationEvent}
      *
      * @param tokenRequest token generated by GitHub for authentication
-     * @return AuthResponse, containing the access token and the refresh token
+     * @return AuthResponse, containing the access token and the refresh token, or null if GitHub rejected the token
+     * @throws ResourceAccessException if GitHub could not be reached or did not answer before the exchange deadline
      */
     public AuthResponse exchangeGithubToken(TokenRequest tokenRequest) {
         String githubToken = tokenRequest.getToken();
-
-        // 1. Validate github token
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(githubToken);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
+        long start = System.nanoTime();
+        AuthenticationEvent event = AuthenticationEvent.begin(AuthenticationEvent.GITHUB_EXCHANGE);
 
         try {
-            ResponseEntity<GithubUserResponse> response = restTemplate.exchange(
-                    "https://api.github.com/user",
-                    HttpMethod.GET,
-                    entity,
-                    GithubUserResponse.class
-            );
-
-            GithubUserResponse githubUser = response.getBody();
-      System.out.println(response.getBody().getEmail());
+            // 1. Validate github token
+            GithubUserResponse githubUser = githubUserCache.get(githubToken, () -> fetchGithubUser(githubToken));
 
             // 2. Verify if user exists in our database. If not, create it
             CredentialsEntity localUser = userDetailsService.findOrCreateUser(githubUser);
+            event.username(localUser.getUsername());
 
-            // 3. Generate token
-            String jwt = jwtService.generateToken(localUser);
+            // 3. Start a session
+            AuthResponse response = authService.startSession(localUser);
+            metrics.record(AuthMetrics.Stage.GITHUB_EXCHANGE, AuthMetrics.SUCCESS, start);
+            event.complete(AuthMetrics.SUCCESS);
+            return response;
+        } catch (HttpClientErrorException.Unauthorized e) {
+            // Only a token refused by GitHub is a bad token, a slow or unreachable GitHub is not
+            metrics.record(AuthMetrics.Stage.GITHUB_EXCHANGE, AuthMetrics.outcome(e), start);
+            event.fail(e);
+            return null;
+        } catch (RuntimeException e) {
+            metrics.record(AuthMetrics.Stage.GITHUB_EXCHANGE, AuthMetrics.outcome(e), start);
+            event.fail(e);
+            throw e;
+        }
+    }
 
-            return new AuthResponse(jwt, localUser.getRefreshToken());
-    } catch (Exception e) {
-        return null;
+    /** Fetches the profile and the email addresses of a GitHub user, each call on its own virtual thread and both
+     * within a single deadline. Neither call outlives this method.
+     * With github.exchange.prefetch-emails the addresses are fetched along with the profile and the call is cancelled
+     * once the profile has a public email, otherwise they are fetched after the profile, only when it has none,
+     * which saves a call of the rate limit of the token at the cost of a second round trip for those profiles.
+     * The primary verified address fills the email of profiles without a public one, the profile is still returned
+     * if the addresses can not be read, like for tokens without the user:email scope.
+     *
+     * @param githubToken GitHub token of the user
+     * @return the profile of the user
+     */
+    private GithubUserResponse fetchGithubUser(String githubToken) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(githubToken);
+        HttpEntity<String> entity = new HttpEntity<>(headers);
+        Instant deadline = Instant.now().plus(exchangeTimeout);
+
+        try (ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+            Callable<GithubEmail[]> emailsCall = () ->
+                    restTemplate.exchange("/user/emails", HttpMethod.GET, entity, GithubEmail[].class).getBody();
+            Future<GithubUserResponse> profile = scope.submit(() ->
+                    restTemplate.exchange("/user", HttpMethod.GET, entity, GithubUserResponse.class).getBody());
+            Future<GithubEmail[]> emails = prefetchEmails ? scope.submit(emailsCall) : null;
+            try {
+                GithubUserResponse githubUser = await(profile, deadline);
+                if (githubUser != null && githubUser.getEmail() == null) {
+                    githubUser.setEmail(primaryEmail(emails != null ? emails : scope.submit(emailsCall), deadline));
+                }
+                return githubUser;
+            } finally {
+                // Whatever is still running, like addresses no longer needed or calls past a failure or the deadline,
+                // is interrupted before the scope closes
+                scope.shutdownNow();
+            }
+        }
     }
+
+    private static String primaryEmail(Future<GithubEmail[]> emails, Instant deadline) {
+        try {
+            GithubEmail[] addresses = await(emails, deadline);
+            if (addresses == null) {
+                return null;
+            }
+            return Arrays.stream(addresses)
+                    .filter(address -> address.primary() && address.verified())
+                    .map(GithubEmail::email)
+                    .findFirst()
+                    .orElse(null);
+        } catch (RestClientException e) {
+            return null;
+        }
+    }
+
+    private static <T> T await(Future<T> call, Instant deadline) {
+        try {
+            long remaining = Math.max(0, Duration.between(Instant.now(), deadline).toNanos());
+            return call.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new ResourceAccessException("GitHub call failed: " + e.getCause());
+        } catch (TimeoutException e) {
+            throw new ResourceAccessException("GitHub did not answer before the exchange deadline",
+                    new SocketTimeoutException("Exchange deadline " + deadline + " passed"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while waiting for GitHub");
+        }
     }
 }
@@ -0,0 +1,156 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.eduardomango.authmicroservice.exceptions.PasswordHashingUnavailableException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Timers of the stages of the authentication pipeline, tagged with the outcome of each call.
+ * Every timer publishes its p50, p99 and p999 and a histogram, so percentiles can also be aggregated across nodes
+ * from the Prometheus scrape. A timer is registered once per stage and outcome and reused, so recording a call
+ * costs two clock reads and a histogram update, cheap enough to stay on in production.
+ */
+@Component
+public class AuthMetrics {
+
+    public static final String SUCCESS = "success";
+    public static final String NOT_FOUND = "not_found";
+
+    /** Stages of the pipeline, each timed under its own metric name */
+    public enum Stage {
+        TOKEN_VERIFY("auth.token.verify", "Parsing and signature check of tokens missing from the verified token cache"),
+        USER_LOAD("auth.user.load", "Loading of a user with its authorities"),
+        AUTHORITY_RESOLUTION("auth.authorities.resolve", "Resolution of the principal and authorities of a request"),
+        PASSWORD_VERIFY("auth.password.verify", "Password check of a login, including the lookup of the login credentials"),
+        TOKEN_SIGN("auth.token.sign", "Building and signing of an access or refresh token"),
+        GITHUB_EXCHANGE("auth.github.exchange", "Exchange of a GitHub token for local tokens"),
+        REFRESH_ROTATION("auth.refresh.rotate", "Rotation of a refresh token into a new token pair");
+
+        private final String metricName;
+        private final String description;
+
+        Stage(String metricName, String description) {
+            this.metricName = metricName;
+            this.description = description;
+        }
+
+        public String metricName() {
+            return metricName;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Map<String, Timer>> timers = new EnumMap<>(Stage.class);
+
+    public AuthMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            Map<String, Timer> outcomes = new ConcurrentHashMap<>();
+            // Registered up front so every stage shows up before its first call
+            outcomes.put(SUCCESS, register(stage, SUCCESS));
+            timers.put(stage, outcomes);
+        }
+    }
+
+    /** Times a call, tagged with success or with the outcome of the exception it throws
+     *
+     * @param stage the stage being timed
+     * @param call the work of the stage
+     * @return the result of the call
+     */
+    public <T> T time(Stage stage, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            record(stage, SUCCESS, start);
+            return result;
+        } catch (RuntimeException e) {
+            record(stage, outcome(e), start);
+            throw e;
+        }
+    }
+
+    /** Times a lookup, tagged with not_found when it finds nothing
+     *
+     * @param stage the stage being timed
+     * @param lookup the lookup of the stage
+     * @return the result of the lookup
+     */
+    public <T> Optional<T> timeLookup(Stage stage, Supplier<Optional<T>> lookup) {
+        long start = System.nanoTime();
+        try {
+            Optional<T> result = lookup.get();
+            record(stage, result.isPresent() ? SUCCESS : NOT_FOUND, start);
+            return result;
+        } catch (RuntimeException e) {
+            record(stage, outcome(e), start);
+            throw e;
+        }
+    }
+
+    /** Records a call timed by the caller
+     *
+     * @param stage the stage that was timed
+     * @param outcome outcome of the call, from a small fixed set of values
+     * @param startNanos {@link System#nanoTime()} at the start of the call
+     */
+    public void record(Stage stage, String outcome, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        timers.get(stage).computeIfAbsent(outcome, key -> register(stage, key)).record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    /** Maps the exception of a failed call to its outcome tag
+     *
+     * @param e exception thrown by the call
+     * @return expired or invalid for tokens, not_found, rejected for bad credentials and requests,
+     * unavailable when a dependency could not answer, error otherwise
+     */
+    public static String outcome(Throwable e) {
+        if (e instanceof ExpiredJwtException) {
+            return "expired";
+        }
+        if (e instanceof JwtException) {
+            return "invalid";
+        }
+        if (e instanceof UsernameNotFoundException || e instanceof NoSuchElementException) {
+            return NOT_FOUND;
+        }
+        if (e instanceof AuthenticationException || e instanceof IllegalArgumentException
+                || e instanceof HttpClientErrorException) {
+            return "rejected";
+        }
+        if (e instanceof PasswordHashingUnavailableException || e instanceof ResourceAccessException) {
+            return "unavailable";
+        }
+        return "error";
+    }
+
+    private Timer register(Stage stage, String outcome) {
+        return Timer.builder(stage.metricName)
+                .description(stage.description)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                // Bounds the number of histogram buckets, the published percentiles are not limited to this range
+                .minimumExpectedValue(Duration.of(100, ChronoUnit.MICROS))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+}
@@ -3,23 +3,32 @@ package org.eduardomango.authmicroservice.services.impl;
 import org.eduardomango.authmicroservice.exceptions.InvalidParametersException;
 import org.eduardomango.authmicroservice.exceptions.InvalidPasswordException;
 import org.eduardomango.authmicroservice.exceptions.InvalidUsernameException;
+import org.eduardomango.authmicroservice.exceptions.PasswordHashingUnavailableException;
 import org.eduardomango.authmicroservice.exceptions.UserNotFoundException;
 import org.eduardomango.authmicroservice.models.CredentialsEntity;
 import org.eduardomango.authmicroservice.models.Enum.UserProfile;
 import org.eduardomango.authmicroservice.models.ProfileEntity;
 import org.eduardomango.authmicroservice.models.auth.AuthRequest;
 import org.eduardomango.authmicroservice.models.auth.AuthResponse;
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.eduardomango.authmicroservice.models.auth.RefreshCredentials;
+import org.eduardomango.authmicroservice.models.auth.VerifiedToken;
 import org.eduardomango.authmicroservice.repositories.CredentialsRepository;
 import org.eduardomango.authmicroservice.repositories.ProfileRepository;
 import org.eduardomango.authmicroservice.services.interfaces.AuthService;
+import org.eduardomango.authmicroservice.services.interfaces.RefreshTokenService;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Service
 public class AuthServiceImpl implements AuthService {
@@ -29,63 +38,169 @@ public class AuthServiceImpl implements AuthService {
     private final AuthenticationManager authenticationManager;
     private final PasswordEncoder passwordEncoder;
     private final ProfileRepository profileRepository;
+    private final RefreshTokenService refreshTokenService;
+    private final RefreshCoalescer refreshCoalescer;
+    private final InvalidationBus invalidationBus;
+    private final AuthorityResolver authorityResolver;
+    private final AuthMetrics metrics;
 
-    public AuthServiceImpl(CredentialsRepository credentialsRepository, JwtServiceImpl tokenProvider, AuthenticationManager authenticationManager, PasswordEncoder passwordEncoder, ProfileRepository profileRepository) {
+    public AuthServiceImpl(CredentialsRepository credentialsRepository, JwtServiceImpl tokenProvider, AuthenticationManager authenticationManager, PasswordEncoder passwordEncoder, ProfileRepository profileRepository, RefreshTokenService refreshTokenService, RefreshCoalescer refreshCoalescer, InvalidationBus invalidationBus, AuthorityResolver authorityResolver, AuthMetrics metrics) {
         this.credentialsRepository = credentialsRepository;
         this.tokenProvider = tokenProvider;
         this.authenticationManager = authenticationManager;
         this.passwordEncoder = passwordEncoder;
         this.profileRepository = profileRepository;
+        this.refreshTokenService = refreshTokenService;
+        this.refreshCoalescer = refreshCoalescer;
+        this.invalidationBus = invalidationBus;
+        this.authorityResolver = authorityResolver;
+        this.metrics = metrics;
     }
 
-    /** Authenticate a user by username and password
+    /** Authenticate a user by username and password.
+     * The password check is timed in auth.password.verify and the loading of the user in auth.user.load,
+     * the login is recorded as an {@link AuthenticationEvent}
      *
      * @param input containing username and password
      * @return the credentials of the user if it was correctly authenticated
      * otherwise, throws exceptions to capture the error
      */
     public CredentialsEntity authenticate(AuthRequest input) {
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        input.username(),
-                        input.password()
-                )
-        );
-        return credentialsRepository.findByUsername(input.username()).orElseThrow();
+        AuthenticationEvent event = AuthenticationEvent.begin(AuthenticationEvent.LOGIN);
+        event.username(input.username());
+        try {
+            metrics.time(AuthMetrics.Stage.PASSWORD_VERIFY, () -> checkPassword(input));
+            CredentialsEntity user = loadUser(() -> credentialsRepository.findWithAuthoritiesByUsername(input.username()))
+                    .orElseThrow();
+            event.complete(AuthMetrics.SUCCESS);
+            return user;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+    }
+
+    /** Checks the password of a user through the authentication manager
+     *
+     * @param input containing username and password
+     * @return the authentication of the user
+     * @throws PasswordHashingUnavailableException if no password hashing thread is available, even for unknown users
+     */
+    private Authentication checkPassword(AuthRequest input) {
+        try {
+            return authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(
+                            input.username(),
+                            input.password()
+                    )
+            );
+        } catch (InternalAuthenticationServiceException e) {
+            // The provider wraps what the password encoder throws, a saturated hashing pool is not a failed login
+            if (e.getCause() instanceof PasswordHashingUnavailableException unavailable) {
+                throw unavailable;
+            }
+            throw e;
+        }
+    }
+
+    /** Starts a new login session of an authenticated user
+     *
+     * @param user the authenticated user
+     * @return the access token and the refresh token of the session
+     */
+    public AuthResponse startSession(CredentialsEntity user) {
+        return new AuthResponse(tokenProvider.generateToken(user), refreshTokenService.issue(user));
     }
 
     /** Receives a refresh token from a user and returns a new access token
-     * as well as updates the refresh token and returns it
+     * as well as updates the refresh token and returns it.
+     * Concurrent refreshes of the same token share a single rotation and get the same tokens.
+     * Rotations are timed in auth.refresh.rotate and recorded as an {@link AuthenticationEvent},
+     * the refreshes sharing one are not.
      *
-     * @param refreshToken refresh token of the user. Must be the same as the database
+     * @param refreshToken refresh token of the user. Its digest must be stored and not expired
      * @return AuthResponse, object containing the new access token and the new refresh token
      */
-    @Transactional
     public AuthResponse refreshAccessToken(String refreshToken) {
-        String username = tokenProvider.extractUsername(refreshToken);
+        return refreshCoalescer.refresh(refreshToken,
+                () -> metrics.time(AuthMetrics.Stage.REFRESH_ROTATION, () -> rotate(refreshToken)));
+    }
+
+    private AuthResponse rotate(String refreshToken) {
+        AuthenticationEvent event = AuthenticationEvent.begin(AuthenticationEvent.REFRESH);
+        try {
+            // Unknown tokens are rejected with a probe of the token hash index, the user is loaded only for a stored one
+            RefreshCredentials credentials = refreshTokenService.find(refreshToken)
+                    .orElseThrow(() -> new IllegalArgumentException("Refresh token does not match"));
 
-        CredentialsEntity user = credentialsRepository.findByUsername(username)
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+            CredentialsEntity user = loadUser(() -> credentialsRepository.findWithAuthoritiesById(credentials.credentialsId()))
+                    .orElseThrow(() -> new IllegalArgumentException("User not found"));
+            event.username(user.getUsername());
+
+            if (!refreshTokenService.isValid(refreshToken, user)) {
+                throw new IllegalArgumentException("Refresh token expired or invalid");
+            }
 
-        if (!user.getRefreshToken().equals(refreshToken)) {
-            throw new IllegalArgumentException("Refresh token does not match");
+            String newAccessToken = tokenProvider.generateToken(user);
+            String newRefreshToken = refreshTokenService.rotate(refreshToken, credentials, user);
+
+            event.complete(AuthMetrics.SUCCESS);
+            return new AuthResponse(newAccessToken, newRefreshToken);
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
         }
+    }
 
-        if (!tokenProvider.validateRefreshToken(refreshToken, user)) {
-            throw new IllegalArgumentException("Refresh token expired or invalid");
+    /** Loads a user and resolves its authorities, timed in auth.user.load and recorded as a {@link PersistenceEvent}
+     *
+     * @param lookup query of the user
+     * @return the user, empty if it does not exist
+     */
+    private Optional<CredentialsEntity> loadUser(Supplier<Optional<CredentialsEntity>> lookup) {
+        PersistenceEvent event = PersistenceEvent.begin(PersistenceEvent.LOAD_USER);
+        try {
+            Optional<CredentialsEntity> user = metrics.timeLookup(AuthMetrics.Stage.USER_LOAD, lookup);
+            user.ifPresent(found -> event.username(authorityResolver.withAuthorities(found).getUsername()));
+            event.complete(user.isPresent() ? AuthMetrics.SUCCESS : AuthMetrics.NOT_FOUND);
+            return user;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
         }
+    }
 
-        String newAccessToken = tokenProvider.generateToken(user);
-        String newRefreshToken = tokenProvider.generateRefreshToken(user);
-        user.setRefreshToken(newRefreshToken);
-        credentialsRepository.save(user);
+    /** Ends the session of a user: revokes its access token on every node and, if given,
+     * the login session of its refresh token
+     *
+     * @param accessToken access token of the request
+     * @param refreshToken refresh token of the session, may be null
+     */
+    public void logout(String accessToken, String refreshToken) {
+        VerifiedToken token = tokenProvider.verify(accessToken);
+        if (token.id() != null) {
+            invalidationBus.publish(InvalidationEvent.token(token));
+        }
+        if (refreshToken != null) {
+            refreshTokenService.revoke(refreshToken);
+        }
+    }
 
-        return new AuthResponse(newAccessToken, newRefreshToken);
+    /** Revokes every access token and login session of a user, like when an admin locks it out
+     *
+     * @param id the id of the user
+     */
+    public void revokeSessions(Long id) {
+        CredentialsEntity credentials = credentialsRepository.findById(id)
+                .orElseThrow(() -> new UserNotFoundException("user not found"));
+        revokeSubject(credentials.getUsername());
+        refreshTokenService.revokeAll(credentials.getId());
     }
 
 
     /** Receives a user id and a new credentials object,
-     * updates the username or password or both of the user in the database
+     * updates the username or password or both of the user in the database.
+     * The tokens issued with the previous credentials are revoked.
      *
      * @param id the id of the user to update
      * @param newCredentials new credentials containing the username, password or both
@@ -97,6 +212,7 @@ public class AuthServiceImpl implements AuthService {
             throw new UserNotFoundException("user not found");
         }
         CredentialsEntity credentials = credentialsOptional.get();
+        String previousUsername = credentials.getUsername();
 
         if (newCredentials.username() == null && newCredentials.password() == null) {
             throw new InvalidParametersException
@@ -120,6 +236,14 @@ public class AuthServiceImpl implements AuthService {
         }
 
         credentialsRepository.save(credentials);
+        // Tokens carry the previous username as subject, they are revoked under that name
+        revokeSubject(previousUsername);
+        refreshTokenService.revokeAll(credentials.getId());
+    }
+
+    private void revokeSubject(String username) {
+        // Tokens carry their issue time to the millisecond, every token issued up to the current one is revoked
+        invalidationBus.publish(InvalidationEvent.subject(username, Instant.now().truncatedTo(ChronoUnit.MILLIS)));
     }
 
     /**
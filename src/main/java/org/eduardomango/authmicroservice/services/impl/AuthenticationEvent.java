@@ -0,0 +1,30 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a login, a refresh, a GitHub token exchange or the authentication of a bearer request,
+ * emitted by {@link AuthServiceImpl}, the OAuth2 service and the JWT authentication filter.
+ */
+@Name(AuthenticationEvent.NAME)
+@Label("Authentication")
+@Description("Login, refresh, GitHub token exchange or authentication of a bearer request")
+public final class AuthenticationEvent extends AuthOperationEvent {
+
+    public static final String NAME = "org.eduardomango.auth.Authentication";
+    public static final String LOGIN = "login";
+    public static final String REFRESH = "refresh";
+    public static final String GITHUB_EXCHANGE = "github-exchange";
+    public static final String REQUEST = "request";
+
+    /** Starts timing an authentication
+     *
+     * @param operation login, refresh, github-exchange or request
+     * @return the started event
+     */
+    public static AuthenticationEvent begin(String operation) {
+        return (AuthenticationEvent) new AuthenticationEvent().start(operation);
+    }
+}
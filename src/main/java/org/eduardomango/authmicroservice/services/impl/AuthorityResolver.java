@@ -0,0 +1,112 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import org.eduardomango.authmicroservice.models.Authorities;
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.Enum.UserProfile;
+import org.eduardomango.authmicroservice.models.Enum.UserRole;
+import org.eduardomango.authmicroservice.models.ProfileEntity;
+import org.eduardomango.authmicroservice.models.RoleEntity;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Resolves the authorities of a user: the roles of its profile, its direct roles and the permits of all of them.
+ * The authorities of each role set are computed once and shared by every user with that set, so resolving them on
+ * the request path allocates nothing. The services that load users set them on the loaded {@link CredentialsEntity}.
+ * The computed authorities are dropped with the reference data they come from, by {@link ReferenceDataCache}.
+ */
+@Component
+public class AuthorityResolver {
+
+    private static final int ROLE_COUNT = UserRole.values().length;
+    // Each generation allocates a slot for every role set, 2^16 of them take 256 KB to 512 KB per invalidation
+    private static final int MAX_ROLE_COUNT = 16;
+
+    static {
+        if (ROLE_COUNT > MAX_ROLE_COUNT) {
+            throw new IllegalStateException("Role sets are indexed by a table of every bit mask of at most "
+                    + MAX_ROLE_COUNT + " roles, not " + ROLE_COUNT);
+        }
+    }
+
+    /**
+     * Computed authorities, replaced as a whole on invalidation so a computation racing with it can not store
+     * authorities of the old data in the new generation.
+     *
+     * @param profileRoles role mask of each profile by ordinal, plus one so 0 means not computed yet
+     * @param authorities authorities of each role mask
+     */
+    private record Generation(AtomicIntegerArray profileRoles, AtomicReferenceArray<List<GrantedAuthority>> authorities) {
+
+        Generation() {
+            this(new AtomicIntegerArray(UserProfile.values().length), new AtomicReferenceArray<>(1 << ROLE_COUNT));
+        }
+    }
+
+    private volatile Generation generation = new Generation();
+
+    /** Resolves the authorities of a user
+     *
+     * @param profile profile of the user, may be null
+     * @param directRoles roles assigned directly to the user
+     * @return the immutable authorities of the roles and their permits, shared with every user with the same roles
+     */
+    public List<GrantedAuthority> resolve(ProfileEntity profile, Set<RoleEntity> directRoles) {
+        Generation current = generation;
+        int mask = profileMask(current, profile) | (directRoles.isEmpty() ? 0 : mask(directRoles));
+
+        List<GrantedAuthority> authorities = current.authorities().get(mask);
+        if (authorities == null) {
+            authorities = Authorities.of(profile, directRoles);
+            current.authorities().set(mask, authorities);
+        }
+        return authorities;
+    }
+
+    /** Sets the resolved authorities on a loaded user, its profile and roles must be fetched
+     *
+     * @param user the loaded user
+     * @return the same user
+     */
+    public CredentialsEntity withAuthorities(CredentialsEntity user) {
+        user.setAuthorities(resolve(user.getProfile(), user.getRoles()));
+        return user;
+    }
+
+    /**
+     * Drops every computed authority, the next resolution computes them again from the current roles and permits.
+     */
+    public void invalidate() {
+        generation = new Generation();
+    }
+
+    private static int profileMask(Generation current, ProfileEntity profile) {
+        if (profile == null) {
+            return 0;
+        }
+        if (profile.getProfile() == null) {
+            return mask(profile.getRoles());
+        }
+        int ordinal = profile.getProfile().ordinal();
+        int mask = current.profileRoles().get(ordinal) - 1;
+        if (mask < 0) {
+            mask = mask(profile.getRoles());
+            current.profileRoles().set(ordinal, mask + 1);
+        }
+        return mask;
+    }
+
+    private static int mask(Collection<RoleEntity> roles) {
+        int mask = 0;
+        for (RoleEntity role : roles) {
+            mask |= 1 << role.getRole().ordinal();
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,98 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.eduardomango.authmicroservice.models.auth.GithubUserResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of the GitHub users resolved from GitHub tokens, keyed by the SHA-256 digest of the token.
+ * Exchanging the same token again within the ttl, like a client reloading, does not call GitHub, and concurrent
+ * exchanges of a token share a single call. A token revoked on GitHub keeps resolving for at most the ttl.
+ * Failed calls are not cached. A max size of 0 disables the cache, concurrent calls are still shared.
+ */
+@Component
+public class GithubUserCache implements MeterBinder {
+
+    private final Cache<String, CompletableFuture<GithubUserResponse>> users;
+    private final boolean enabled;
+
+    public GithubUserCache(@Value("${github.user-cache.max-size:10000}") long maxSize,
+                           @Value("${github.user-cache.ttl:PT30S}") Duration ttl) {
+        this.enabled = maxSize > 0;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(enabled ? maxSize : Long.MAX_VALUE)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /** Returns the GitHub user of a token, calling GitHub only if no other thread is calling it for the token
+     * and no call for it succeeded within the ttl
+     *
+     * @param githubToken GitHub token being exchanged
+     * @param fetch calls GitHub for the user of the token
+     * @return the GitHub user of the token
+     */
+    public GithubUserResponse get(String githubToken, Supplier<GithubUserResponse> fetch) {
+        String key = TokenDigests.sha256Key(githubToken);
+        // Looked up through the cache first so hits and misses are counted, the map operations are not
+        CompletableFuture<GithubUserResponse> running = users.getIfPresent(key);
+        if (running != null) {
+            return join(running);
+        }
+        CompletableFuture<GithubUserResponse> created = new CompletableFuture<>();
+        running = users.asMap().putIfAbsent(key, created);
+        if (running != null) {
+            return join(running);
+        }
+
+        try {
+            GithubUserResponse user = fetch.get();
+            created.complete(user);
+            if (!enabled || user == null) {
+                users.asMap().remove(key, created);
+            }
+            return user;
+        } catch (RuntimeException e) {
+            // Failures are not kept, the waiting exchanges get the error and the next one calls GitHub again
+            users.asMap().remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /** Hit, miss and eviction counters of the cache, a hit being an exchange served without its own GitHub call
+     *
+     * @return snapshot of the cache statistics
+     */
+    public CacheStats stats() {
+        return users.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, users, "githubUsers");
+    }
+
+    private static GithubUserResponse join(CompletableFuture<GithubUserResponse> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+}
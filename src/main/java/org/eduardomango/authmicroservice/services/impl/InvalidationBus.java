@@ -0,0 +1,272 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.eduardomango.authmicroservice.models.InvalidationEventEntity;
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.eduardomango.authmicroservice.repositories.InvalidationEventRepository;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Propagates invalidation events to every node over the Postgres connection already in use, without another broker.
+ * An event is stored and sent with NOTIFY on the channel, which Postgres delivers on commit to every node listening
+ * with LISTEN, and applied on this node as a Spring event: at once for revocations, once the transaction commits for
+ * reference data changes. Each node listens on a
+ * connection of its own, opened with the datasource settings outside the pool, so the listener never holds a pooled
+ * connection.
+ * Notifications sent while a node is not listening are lost, so a node replays the stored events of the time it was
+ * not listening when it (re)connects, starting with one access token lifetime on startup. Events are idempotent,
+ * receiving one twice does no harm.
+ * When disabled, events are only applied on this node.
+ */
+@Component
+public class InvalidationBus implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+    private static final Pattern CHANNEL = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    private final InvalidationEventRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcConnectionDetails connectionDetails;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final String channel;
+    private final Duration pollTimeout;
+    private final Duration reconnectDelay;
+    private final Duration replayMargin;
+    private final Duration retention;
+    private final Timer lagTimer;
+    private final Counter replayedCounter;
+
+    private volatile boolean running;
+    private volatile boolean listening;
+    private Thread listener;
+
+    public InvalidationBus(InvalidationEventRepository repository,
+                           JdbcTemplate jdbcTemplate,
+                           JdbcConnectionDetails connectionDetails,
+                           ApplicationEventPublisher eventPublisher,
+                           MeterRegistry registry,
+                           @Value("${invalidation.enabled:true}") boolean enabled,
+                           @Value("${invalidation.channel:auth_invalidation}") String channel,
+                           @Value("${invalidation.poll-timeout:PT0.5S}") Duration pollTimeout,
+                           @Value("${invalidation.reconnect-delay:PT5S}") Duration reconnectDelay,
+                           @Value("${invalidation.replay-margin:PT10S}") Duration replayMargin,
+                           @Value("${jwt.expiration}") long accessTokenLifetimeMillis) {
+        if (!CHANNEL.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Invalid invalidation channel name: " + channel);
+        }
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.connectionDetails = connectionDetails;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.channel = channel;
+        this.pollTimeout = pollTimeout;
+        this.reconnectDelay = reconnectDelay;
+        this.replayMargin = replayMargin;
+        // A revocation matters until the tokens it revokes expire, older events change nothing
+        this.retention = Duration.ofMillis(accessTokenLifetimeMillis).plus(replayMargin);
+        this.lagTimer = Timer.builder("auth.invalidation.lag")
+                .description("Time from the publication of an invalidation event to its notification on this node")
+                .register(registry);
+        this.replayedCounter = Counter.builder("auth.invalidation.replayed")
+                .description("Invalidation events replayed after (re)connecting")
+                .register(registry);
+        Gauge.builder("auth.invalidation.listening", this, bus -> bus.isListening() ? 1 : 0)
+                .description("1 while this node receives the invalidation events of the other nodes")
+                .register(registry);
+    }
+
+    /** Applies an event on this node and sends it to the other nodes, which apply it once the transaction commits.
+     * Revocations are applied on this node before anything is written, so they hold on this node even when the
+     * event can not be stored or sent, a revocation kept after a rollback being harmless and a lost one not.
+     * Inside a transaction, reference data changes are applied on this node only once it commits, so the caches are
+     * not reloaded with the data being replaced, otherwise before this method returns.
+     *
+     * @param event the change to apply on every node
+     */
+    @Transactional
+    public void publish(InvalidationEvent event) {
+        if (event.type() == InvalidationEvent.Type.REFERENCE_DATA && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eventPublisher.publishEvent(event);
+                }
+            });
+        } else {
+            eventPublisher.publishEvent(event);
+        }
+        if (!enabled) {
+            return;
+        }
+        Instant now = Instant.now();
+        repository.save(InvalidationEventEntity.builder()
+                .type(event.type())
+                .key(event.key())
+                .at(event.at())
+                .createdAt(now)
+                .build());
+        jdbcTemplate.queryForList("select pg_notify(?, ?)", channel, encode(event, now));
+    }
+
+    /**
+     * Drops the stored events that no node can need to replay anymore.
+     */
+    @Scheduled(fixedDelayString = "${invalidation.purge-interval:PT1H}")
+    public void purge() {
+        if (enabled) {
+            repository.deleteCreatedBefore(Instant.now().minus(retention));
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+            try {
+                listener.join(pollTimeout.multipliedBy(2).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            listener = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Whether this node is listening to the channel, the events of the other nodes reach it within the poll timeout */
+    public boolean isListening() {
+        return listening;
+    }
+
+    private void listen() {
+        Instant replayFrom = Instant.now().minus(retention);
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(connectionDetails.getJdbcUrl(),
+                    connectionDetails.getUsername(), connectionDetails.getPassword())) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                // Listening before replaying, an event committed in between is received twice rather than missed
+                replay(replayFrom);
+                listening = true;
+                log.info("Listening to invalidation events on channel {}", channel);
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollTimeout.toMillis());
+                    // Every event committed up to now was received, the margin covers commit delays and clock skew
+                    replayFrom = Instant.now().minus(replayMargin);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            receive(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    log.warn("Invalidation listener disconnected, reconnecting in {}", reconnectDelay, e);
+                }
+            } finally {
+                listening = false;
+            }
+            if (running) {
+                try {
+                    Thread.sleep(reconnectDelay.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Applies the stored events created since a moment
+     *
+     * @param from creation time of the oldest event to apply
+     */
+    void replay(Instant from) {
+        List<InvalidationEventEntity> events = repository.findByCreatedAtGreaterThanEqualOrderByIdAsc(from);
+        events.forEach(event -> apply(event.toEvent()));
+        replayedCounter.increment(events.size());
+    }
+
+    /** Applies an event received in a notification
+     *
+     * @param payload payload of the notification, see {@link #encode}
+     */
+    void receive(String payload) {
+        String[] fields = payload.split(" ", 4);
+        try {
+            InvalidationEvent.Type type = InvalidationEvent.Type.valueOf(fields[0]);
+            Instant publishedAt = Instant.ofEpochMilli(Long.parseLong(fields[1]));
+            Instant at = Instant.ofEpochMilli(Long.parseLong(fields[2]));
+            lagTimer.record(Duration.between(publishedAt, Instant.now()).abs());
+            apply(new InvalidationEvent(type, fields.length > 3 ? fields[3] : null, at));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            log.warn("Ignoring malformed invalidation event {}", payload);
+        }
+    }
+
+    /** Compact text form of an event sent as notification payload, well below the 8000 bytes limit of NOTIFY:
+     * type, publication and event times in epoch milliseconds, then the key, which may contain spaces, last.
+     *
+     * @param event the event
+     * @param publishedAt when it was published
+     * @return the payload
+     */
+    static String encode(InvalidationEvent event, Instant publishedAt) {
+        String payload = event.type() + " " + publishedAt.toEpochMilli() + " " + event.at().toEpochMilli();
+        return event.key() == null ? payload : payload + " " + event.key();
+    }
+
+    private void apply(InvalidationEvent event) {
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (RuntimeException e) {
+            log.error("Could not apply invalidation event {}", event, e);
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package org.eduardomango.authmicroservice.services.impl;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.io.Serializer;
+import io.jsonwebtoken.jackson.io.JacksonDeserializer;
+import io.jsonwebtoken.jackson.io.JacksonSerializer;
 import io.jsonwebtoken.security.Keys;
+import org.eduardomango.authmicroservice.config.JwtKey;
 import org.eduardomango.authmicroservice.config.JwtKeyProvider;
 import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.Enum.UserPermit;
 import org.eduardomango.authmicroservice.models.auth.AuthResponse;
 import org.eduardomango.authmicroservice.models.auth.TokenRequest;
+import org.eduardomango.authmicroservice.models.auth.VerifiedToken;
 import org.eduardomango.authmicroservice.services.interfaces.JwtService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
@@ -17,11 +27,13 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import java.security.Key;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,9 +46,22 @@ public class JwtServiceImpl implements JwtService {
     private Long refreshTokenExpiration;
 
     private final JwtKeyProvider keyProvider;
+    private final VerifiedTokenCache tokenCache;
+    private final AuthMetrics metrics;
 
-    public JwtServiceImpl(JwtKeyProvider keyProvider) {
+    // Built once and shared by every request thread, both are immutable and thread-safe
+    private final JwtParser jwtParser;
+    private final Serializer<Map<String, ?>> jsonSerializer;
+
+    public JwtServiceImpl(JwtKeyProvider keyProvider, VerifiedTokenCache tokenCache, AuthMetrics metrics) {
         this.keyProvider = keyProvider;
+        this.tokenCache = tokenCache;
+        this.metrics = metrics;
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new VerificationKeyResolver(keyProvider))
+                .deserializeJsonWith(new JacksonDeserializer<>())
+                .build();
+        this.jsonSerializer = new JacksonSerializer<>();
     }
 
 
@@ -47,7 +72,55 @@ public class JwtServiceImpl implements JwtService {
      */
     @Override
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verify(token).subject();
+    }
+
+    /**
+     * Verifies the signature of a JWT token and extracts the claims used along the request.
+     * This is the only place where the signature is checked, callers should reuse the result.
+     * Tokens already verified are served from the verified token cache without checking the signature again.
+     * Every verification is a {@link TokenEvent} with the cache hit or miss.
+     *
+     * @param token The JWT token to verify.
+     * @return the verified token.
+     * @throws JwtException if the signature is invalid or the token is malformed or expired.
+     */
+    @Override
+    public VerifiedToken verify(String token) {
+        TokenEvent event = TokenEvent.begin(TokenEvent.VERIFY);
+        event.tokenCache(true);
+        try {
+            VerifiedToken verified = tokenCache.get(token, raw -> {
+                event.tokenCache(false);
+                return verifySignature(raw);
+            });
+            event.username(verified.subject());
+            event.complete(AuthMetrics.SUCCESS);
+            return verified;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Verifies the signature of a JWT token and builds the verified token from its claims, timed in auth.token.verify.
+     *
+     * @param token The JWT token to verify.
+     * @return the verified token.
+     */
+    private VerifiedToken verifySignature(String token) {
+        return metrics.time(AuthMetrics.Stage.TOKEN_VERIFY, () -> {
+            Claims claims = extractAllClaims(token);
+            return new VerifiedToken(
+                    claims.getSubject(),
+                    extractId(claims),
+                    extractIssuedAt(claims),
+                    claims.getExpiration().toInstant(),
+                    extractRoles(claims),
+                    extractPermits(claims)
+            );
+        });
     }
 
 
@@ -58,12 +131,22 @@ public class JwtServiceImpl implements JwtService {
      */
     @Override
     public String generateToken(UserDetails userDetails) {
-        Map<String, Object> claims = new HashMap<>();
-        List<String> rolesAsString = userDetails.getAuthorities().stream()
-                .map(GrantedAuthority::getAuthority)
-                .collect(Collectors.toList());
+        Map<String, Object> claims = new HashMap<>(4);
+        // Permits travel as a bit mask instead of one string each
+        List<String> rolesAsString = new ArrayList<>();
+        long permits = 0;
+        for (GrantedAuthority authority : userDetails.getAuthorities()) {
+            UserPermit permit = UserPermit.fromCode(authority.getAuthority());
+            if (permit != null) {
+                permits |= permit.mask();
+            } else {
+                rolesAsString.add(authority.getAuthority());
+            }
+        }
 
         claims.put("roles", rolesAsString);
+        claims.put("perms", permits);
+        claims.put("pv", UserPermit.BITS_VERSION);
         return buildToken(claims, userDetails, jwtExpiration);
     }
 
@@ -74,7 +157,7 @@ public class JwtServiceImpl implements JwtService {
      */
     @Override
     public String generateRefreshToken(UserDetails userDetails) {
-        Map<String, Object> claims = new HashMap<>();
+        Map<String, Object> claims = new HashMap<>(4);
         claims.put("type", "refresh");
         return buildToken(claims, userDetails, refreshTokenExpiration);
     }
@@ -87,25 +170,31 @@ public class JwtServiceImpl implements JwtService {
      * @param userDetails The user details to compare against the token.
      * @return True if the token is valid, false otherwise.
      */
+    @Override
     public boolean isTokenValid(String token, UserDetails userDetails) {
         try {
-            // This will throw an exception if the signature is invalid
-            Jwts.parserBuilder()
-                    .setSigningKey(keyProvider.getPublicKey())
-                    .build()
-                    .parseClaimsJws(token);
-
-            final String username = extractUsername(token);
-            return (username.equals(userDetails.getUsername()))
-                    && !isTokenExpired(token)
-                    && userDetails.isAccountNonLocked()
-                    && userDetails.isEnabled();
-
+            return isTokenValid(verify(token), userDetails);
         } catch (JwtException e) {
             return false; // Invalid token
         }
     }
 
+    /**
+     * Validates an already verified JWT token by checking its expiration,
+     * username match, and user account status. The signature is not checked again.
+     *
+     * @param token The verified token to validate.
+     * @param userDetails The user details to compare against the token.
+     * @return True if the token is valid, false otherwise.
+     */
+    @Override
+    public boolean isTokenValid(VerifiedToken token, UserDetails userDetails) {
+        return token.subject().equals(userDetails.getUsername())
+                && !token.isExpired()
+                && userDetails.isAccountNonLocked()
+                && userDetails.isEnabled();
+    }
+
     /**
      * Validates a Refresh Token by checking its signature and expiration.
      *
@@ -115,35 +204,15 @@ public class JwtServiceImpl implements JwtService {
     @Override
     public boolean validateRefreshToken(String refreshToken, UserDetails userDetails) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(keyProvider.getPublicKey())
-                    .build()
-                    .parseClaimsJws(refreshToken);
-
-            final String username = extractUsername(refreshToken);
-            return (username.equals(userDetails.getUsername())) &&
-                    !isTokenExpired(refreshToken);
+            VerifiedToken token = verify(refreshToken);
+            return token.subject().equals(userDetails.getUsername()) &&
+                    !token.isExpired();
 
         } catch (JwtException e) {
             return false; // Invalid token
         }
     }
 
-    /**
-     * Extracts a specific claim from a given JWT token.
-     * This method retrieves all claims from the token and applies a resolver function
-     * to extract the desired claim.
-     *
-     * @param token The JWT token from which the claim is extracted.
-     * @param claimsResolver A function to resolve and extract a specific claim from the token's claims.
-     * @param <T> The type of the claim to be extracted.
-     * @return The extracted claim of type T.
-     */
-    private <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
-    }
-
     /**
      * Parses and extracts all claims from a given JWT token.
      *
@@ -151,16 +220,17 @@ public class JwtServiceImpl implements JwtService {
      * @return The claims extracted from the token.
      */
     private Claims extractAllClaims(String token) {
-        return Jwts
-                .parserBuilder()
-                .setSigningKey(keyProvider.getPublicKey())
-                .build()
+        return jwtParser
                 .parseClaimsJws(token)
                 .getBody();
     }
 
     /**
      * Generates a JWT token with the given claims, user details, and expiration time.
+     * Every token gets a random jti, so it can be revoked on its own, and two tokens issued to a user
+     * in the same second still differ. The iat claim is in seconds, so the issue time is also carried to the
+     * millisecond in iat_ms, which revocations of a user are compared with.
+     * Timed in auth.token.sign and recorded as a {@link TokenEvent}.
      *
      * @param extraClaims Additional claims to include in the token.
      * @param userDetails The user details used to set the token subject.
@@ -172,24 +242,118 @@ public class JwtServiceImpl implements JwtService {
             UserDetails userDetails,
             long expiration
     ) {
-        return Jwts
-                .builder()
-                .setClaims(extraClaims)
-                .setSubject(userDetails.getUsername())
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(keyProvider.getPrivateKey(), SignatureAlgorithm.RS256)
-                .compact();
-    }
-
-    /** Verifies if a given token is expired
-     * Could be access token or refresh token
+        TokenEvent event = TokenEvent.begin(TokenEvent.SIGN);
+        event.username(userDetails.getUsername());
+        try {
+            String token = signToken(extraClaims, userDetails, expiration);
+            event.complete(AuthMetrics.SUCCESS);
+            return token;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+    }
+
+    private String signToken(Map<String, Object> extraClaims, UserDetails userDetails, long expiration) {
+        return metrics.time(AuthMetrics.Stage.TOKEN_SIGN, () -> {
+            long now = System.currentTimeMillis();
+            JwtKey signingKey = keyProvider.getSigningKey();
+            return Jwts
+                    .builder()
+                    .serializeToJsonWith(jsonSerializer)
+                    .setHeaderParam(JwsHeader.KEY_ID, signingKey.kid())
+                    .setClaims(extraClaims)
+                    .setSubject(userDetails.getUsername())
+                    .setId(UUID.randomUUID().toString())
+                    .setIssuedAt(new Date(now))
+                    .claim("iat_ms", now)
+                    .setExpiration(new Date(now + expiration))
+                    .signWith(signingKey.privateKey(), signingKey.algorithm())
+                    .compact();
+        });
+    }
+
+    /** Extracts the jti of a given token
+     *
+     * @param claims of a parsed token
+     * @return the jti, or null if the token has none or one that was not issued by this service
+     */
+    private UUID extractId(Claims claims) {
+        String id = claims.getId();
+        if (id == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** Extracts the issue time of a given token
+     *
+     * @param claims of a parsed token
+     * @return the iat_ms claim, or the iat claim in seconds for tokens issued before they had one, or null
+     */
+    private Instant extractIssuedAt(Claims claims) {
+        if (claims.get("iat_ms") instanceof Number millis) {
+            return Instant.ofEpochMilli(millis.longValue());
+        }
+        return claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null;
+    }
+
+    /** Extracts the roles claim of a given token
+     *
+     * @param claims of a parsed token
+     * @return the roles of the token, or an empty list if the claim is not present
+     */
+    private List<String> extractRoles(Claims claims) {
+        Object roles = claims.get("roles");
+        if (!(roles instanceof List<?> list)) {
+            return List.of();
+        }
+        return list.stream().map(String::valueOf).toList();
+    }
+
+    /** Extracts the permission mask of a given token
      *
-     * @param token to be verified
-     * @return true if token is expired, false otherwise.
+     * @param claims of a parsed token
+     * @return the permission mask, or 0 if the token has no mask or one of another bit assignment version
+     */
+    private long extractPermits(Claims claims) {
+        Object version = claims.get("pv");
+        Object permits = claims.get("perms");
+        if (!(version instanceof Number number) || number.intValue() != UserPermit.BITS_VERSION
+                || !(permits instanceof Number mask)) {
+            return 0;
+        }
+        return mask.longValue();
+    }
+
+    /**
+     * Resolves the key that verifies a token from the kid of its header.
+     * Tokens without a kid were issued before keys had ids and are verified with the signing key.
+     * The algorithm of the header must match the algorithm of the key.
      */
-    private boolean isTokenExpired(String token) {
-        Date expiration = extractClaim(token, Claims::getExpiration);
-        return expiration.before(new Date());
+    private static class VerificationKeyResolver extends SigningKeyResolverAdapter {
+
+        private final JwtKeyProvider keyProvider;
+
+        VerificationKeyResolver(JwtKeyProvider keyProvider) {
+            this.keyProvider = keyProvider;
+        }
+
+        @Override
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            String kid = header.getKeyId();
+            JwtKey key = kid != null ? keyProvider.findVerificationKey(kid) : keyProvider.getSigningKey();
+            if (key == null) {
+                throw new UnsupportedJwtException("Unknown signing key: " + kid);
+            }
+            if (!key.algorithm().getValue().equals(header.getAlgorithm())) {
+                throw new UnsupportedJwtException("Unexpected signature algorithm: " + header.getAlgorithm());
+            }
+            return key.publicKey();
+        }
     }
 }
@@ -0,0 +1,27 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a database operation of the authentication pipeline, like the loading of a user with its
+ * authorities, emitted by {@link AuthServiceImpl} and the JWT authentication filter.
+ */
+@Name(PersistenceEvent.NAME)
+@Label("Persistence Operation")
+@Description("Database operation of the authentication pipeline")
+public final class PersistenceEvent extends AuthOperationEvent {
+
+    public static final String NAME = "org.eduardomango.auth.Persistence";
+    public static final String LOAD_USER = "load-user";
+
+    /** Starts timing a database operation
+     *
+     * @param operation name of the operation, like load-user
+     * @return the started event
+     */
+    public static PersistenceEvent begin(String operation) {
+        return (PersistenceEvent) new PersistenceEvent().start(operation);
+    }
+}
@@ -0,0 +1,83 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.eduardomango.authmicroservice.models.PermitEntity;
+import org.eduardomango.authmicroservice.models.ProfileEntity;
+import org.eduardomango.authmicroservice.models.RoleEntity;
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Second-level cache of the reference data: profiles, roles, permits and their associations.
+ * The data is read on every user load and registration and almost never changes, so it is served from the cache
+ * and invalidated explicitly when it is changed outside of this service (like a manual database update).
+ * Invalidations published through the {@link InvalidationBus} reach the cache of every node.
+ */
+@Component
+public class ReferenceDataCache {
+
+    private static final Class<?>[] ENTITIES = {ProfileEntity.class, RoleEntity.class, PermitEntity.class};
+    private static final String[] COLLECTIONS = {ProfileEntity.class.getName() + ".roles", RoleEntity.class.getName() + ".permits"};
+
+    private final SessionFactory sessionFactory;
+    private final AuthorityResolver authorityResolver;
+
+    public ReferenceDataCache(EntityManagerFactory entityManagerFactory, AuthorityResolver authorityResolver) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.authorityResolver = authorityResolver;
+    }
+
+    /**
+     * Evicts the cached reference data and the query results built from it,
+     * together with the authorities computed from it.
+     */
+    public void invalidate() {
+        Cache cache = sessionFactory.getCache();
+        for (Class<?> entity : ENTITIES) {
+            cache.evictEntityData(entity);
+        }
+        for (String collection : COLLECTIONS) {
+            cache.evictCollectionData(collection);
+        }
+        cache.evictDefaultQueryRegion();
+        authorityResolver.invalidate();
+    }
+
+    /** Invalidates the cache when this or another node publishes a reference data change
+     *
+     * @param event invalidation event, only reference data changes concern the cache
+     */
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        if (event.type() == InvalidationEvent.Type.REFERENCE_DATA) {
+            invalidate();
+        }
+    }
+
+    /** Hit and miss counts of the reference data regions, since startup
+     *
+     * @return hits, misses and hit ratio of each cache region
+     */
+    public Map<String, Map<String, Object>> stats() {
+        Statistics statistics = sessionFactory.getStatistics();
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+            long hits = regionStatistics.getHitCount();
+            long misses = regionStatistics.getMissCount();
+            stats.put(region, Map.of(
+                    "hits", hits,
+                    "misses", misses,
+                    "hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses)));
+        }
+        return stats;
+    }
+}
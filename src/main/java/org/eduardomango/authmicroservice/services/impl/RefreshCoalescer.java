@@ -0,0 +1,69 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.eduardomango.authmicroservice.models.auth.AuthResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces the concurrent refreshes of a same refresh token: the first one rotates the token and the others wait
+ * for its result instead of rotating it again. The result is kept for the grace period, so a refresh arriving
+ * shortly after with the same token gets the same pair without signing or touching the database.
+ * Results are keyed by the SHA-256 digest of the refresh token.
+ */
+@Component
+public class RefreshCoalescer {
+
+    private final Cache<String, CompletableFuture<AuthResponse>> results;
+
+    public RefreshCoalescer(@Value("${refresh-token.grace-period:PT10S}") Duration gracePeriod) {
+        this.results = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(gracePeriod)
+                .build();
+    }
+
+    /** Returns the result of the refresh of a token, running the refresh only if no other thread is running it
+     * or ran it during the grace period
+     *
+     * @param refreshToken refresh token being used
+     * @param refresh rotates the token, called at most once per token and grace period
+     * @return the access token and refresh token issued for the token
+     */
+    public AuthResponse refresh(String refreshToken, Supplier<AuthResponse> refresh) {
+        String key = TokenDigests.sha256Key(refreshToken);
+        CompletableFuture<AuthResponse> created = new CompletableFuture<>();
+        CompletableFuture<AuthResponse> running = results.asMap().putIfAbsent(key, created);
+        if (running != null) {
+            return join(running);
+        }
+
+        try {
+            AuthResponse response = refresh.get();
+            created.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            // Failures are not kept, the waiting refreshes get the error and the next one tries again
+            results.asMap().remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static AuthResponse join(CompletableFuture<AuthResponse> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+}
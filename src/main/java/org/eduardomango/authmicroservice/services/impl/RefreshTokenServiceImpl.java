@@ -0,0 +1,243 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.RefreshTokenEntity;
+import org.eduardomango.authmicroservice.models.auth.RefreshCredentials;
+import org.eduardomango.authmicroservice.repositories.RefreshTokenRepository;
+import org.eduardomango.authmicroservice.services.interfaces.JwtService;
+import org.eduardomango.authmicroservice.services.interfaces.RefreshTokenService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Issues and rotates the refresh tokens of the users. Tokens are stored by their SHA-256 digest, one row per
+ * login session, so a user can stay logged in on several devices at once.
+ * Tokens are either signed JWTs or opaque random values: the stored digest already proves an opaque token was
+ * issued here, so issuing and checking one takes no signature, and it is 43 characters instead of about 600.
+ * A rotated token keeps being honoured during a short grace period, so the parallel refreshes of a client
+ * holding the same token all get the same new token. Using it after that revokes the whole login session.
+ */
+@Service
+public class RefreshTokenServiceImpl implements RefreshTokenService {
+
+    static final String JWT = "jwt";
+    static final String OPAQUE = "opaque";
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenServiceImpl.class);
+    private static final int OPAQUE_TOKEN_BYTES = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final String SUCCESSOR_KEY_LABEL = "refresh-token-successor:";
+    private static final int GCM_NONCE_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final JwtService jwtService;
+    private final Duration expiration;
+    private final Duration gracePeriod;
+    private final boolean opaque;
+    private final SecureRandom random = new SecureRandom();
+
+    public RefreshTokenServiceImpl(RefreshTokenRepository refreshTokenRepository, JwtService jwtService,
+                                   @Value("${refresh-token.expiration}") long expirationMillis,
+                                   @Value("${refresh-token.format:jwt}") String format,
+                                   @Value("${refresh-token.grace-period:PT10S}") Duration gracePeriod) {
+        if (!JWT.equals(format) && !OPAQUE.equals(format)) {
+            throw new IllegalArgumentException("Unsupported refresh token format: " + format);
+        }
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.jwtService = jwtService;
+        this.expiration = Duration.ofMillis(expirationMillis);
+        this.gracePeriod = gracePeriod;
+        this.opaque = OPAQUE.equals(format);
+    }
+
+    /** Issues the refresh token of a new login session
+     *
+     * @param user the logged in user
+     * @return the refresh token, only its digest is stored
+     */
+    @Override
+    public String issue(CredentialsEntity user) {
+        return store(user, UUID.randomUUID());
+    }
+
+    /** Looks up a refresh token by its digest
+     *
+     * @param refreshToken refresh token sent by a client
+     * @return the stored token, empty when it is unknown or expired
+     */
+    @Override
+    public Optional<RefreshCredentials> find(String refreshToken) {
+        return refreshTokenRepository.findCredentialsByTokenHash(TokenDigests.sha256(refreshToken))
+                .filter(credentials -> credentials.expiresAt().isAfter(Instant.now()));
+    }
+
+    /** Checks a stored refresh token was issued to a user and is still valid
+     *
+     * @param refreshToken refresh token sent by a client, already found by {@link #find(String)}
+     * @param user the user the stored token was issued to
+     * @return true for an opaque token, whose digest and expiration were checked by the lookup,
+     * or a JWT with a valid signature, subject and expiration
+     */
+    @Override
+    public boolean isValid(String refreshToken, CredentialsEntity user) {
+        return opaque || jwtService.validateRefreshToken(refreshToken, user);
+    }
+
+    /** Replaces a refresh token with a new one of the same login session.
+     * The new token is stored first, then the old one is marked as rotated together with a sealed copy of the new one,
+     * in an update conditioned on the version it was read with. Of several concurrent refreshes, on any node,
+     * exactly one marks it: the others delete the token they stored and return the successor read back from the row,
+     * so a session never has more than one live token. A refresh within the grace period returns that same successor.
+     *
+     * @param refreshToken refresh token sent by the client, the key of its sealed successor derives from it
+     * @param current the stored token being used
+     * @param user the user the token was issued to
+     * @return the new refresh token, or the one that already replaced it
+     * @throws IllegalArgumentException when the token was rotated before the grace period, the session is then revoked
+     */
+    @Override
+    public String rotate(String refreshToken, RefreshCredentials current, CredentialsEntity user) {
+        if (current.rotatedAt() != null) {
+            return successor(refreshToken, current);
+        }
+        String successor = store(user, current.familyId());
+        if (refreshTokenRepository.markRotated(current.tokenId(), current.version(), Instant.now(),
+                seal(refreshToken, successor)) == 1) {
+            return successor;
+        }
+        // A concurrent refresh rotated the token first, its successor stays the only live token of the session
+        refreshTokenRepository.deleteByTokenHash(TokenDigests.sha256(successor));
+        RefreshCredentials rotated = refreshTokenRepository.findCredentialsByTokenHash(TokenDigests.sha256(refreshToken))
+                .orElseThrow(() -> new IllegalArgumentException("Refresh token was already used"));
+        return successor(refreshToken, rotated);
+    }
+
+    /** Ends the login session of a refresh token, like on logout
+     *
+     * @param refreshToken refresh token of the session, ignored when unknown
+     */
+    @Override
+    public void revoke(String refreshToken) {
+        refreshTokenRepository.findCredentialsByTokenHash(TokenDigests.sha256(refreshToken))
+                .ifPresent(credentials -> refreshTokenRepository.deleteFamily(credentials.familyId()));
+    }
+
+    /** Ends every login session of a user, like after a password change or a lockout
+     *
+     * @param credentialsId id of the credentials of the user
+     */
+    @Override
+    public void revokeAll(Long credentialsId) {
+        refreshTokenRepository.deleteByCredentialsId(credentialsId);
+    }
+
+    /**
+     * Deletes the expired refresh tokens and the rotated ones past their grace period,
+     * they can no longer be used and only take space in the index.
+     */
+    @Scheduled(initialDelayString = "${refresh-token.purge-interval:PT1H}", fixedDelayString = "${refresh-token.purge-interval:PT1H}")
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        int purged = refreshTokenRepository.deleteExpired(now, now.minus(gracePeriod));
+        if (purged > 0) {
+            log.info("Purged {} expired refresh tokens", purged);
+        }
+    }
+
+    /** Returns the token that replaced a rotated one, within the grace period
+     *
+     * @param refreshToken the rotated token sent by the client
+     * @param rotated the stored rotated token
+     * @return the successor of the token
+     * @throws IllegalArgumentException when the grace period is over, the session is then revoked
+     */
+    private String successor(String refreshToken, RefreshCredentials rotated) {
+        if (rotated.rotatedAt() == null || rotated.successorToken() == null) {
+            throw new IllegalArgumentException("Refresh token was already used");
+        }
+        if (rotated.rotatedAt().plus(gracePeriod).isBefore(Instant.now())) {
+            // A rotated token used again after the grace period was most likely stolen
+            refreshTokenRepository.deleteFamily(rotated.familyId());
+            log.warn("Refresh token of session {} reused after rotation, the session was revoked", rotated.familyId());
+            throw new IllegalArgumentException("Refresh token was already used");
+        }
+        return unseal(refreshToken, rotated.successorToken());
+    }
+
+    /** Encrypts the successor of a refresh token with AES-GCM, under a key derived from the refresh token.
+     * The stored digest of the token does not give the key, so reading the table does not reveal successors
+     *
+     * @param refreshToken the token being rotated
+     * @param successor the token replacing it
+     * @return the nonce followed by the encrypted successor
+     */
+    byte[] seal(String refreshToken, String successor) {
+        byte[] nonce = new byte[GCM_NONCE_BYTES];
+        random.nextBytes(nonce);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, successorKey(refreshToken), new GCMParameterSpec(GCM_TAG_BITS, nonce));
+            byte[] sealed = cipher.doFinal(successor.getBytes(StandardCharsets.UTF_8));
+            byte[] result = Arrays.copyOf(nonce, GCM_NONCE_BYTES + sealed.length);
+            System.arraycopy(sealed, 0, result, GCM_NONCE_BYTES, sealed.length);
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not seal the successor of a refresh token", e);
+        }
+    }
+
+    private static String unseal(String refreshToken, byte[] sealed) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, successorKey(refreshToken),
+                    new GCMParameterSpec(GCM_TAG_BITS, sealed, 0, GCM_NONCE_BYTES));
+            byte[] successor = cipher.doFinal(sealed, GCM_NONCE_BYTES, sealed.length - GCM_NONCE_BYTES);
+            return new String(successor, StandardCharsets.UTF_8);
+        } catch (AEADBadTagException e) {
+            throw new IllegalArgumentException("Refresh token does not match");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not unseal the successor of a refresh token", e);
+        }
+    }
+
+    private static SecretKeySpec successorKey(String refreshToken) {
+        return new SecretKeySpec(TokenDigests.sha256(SUCCESSOR_KEY_LABEL + refreshToken), "AES");
+    }
+
+    private String store(CredentialsEntity user, UUID familyId) {
+        String refreshToken = opaque ? opaqueToken() : jwtService.generateRefreshToken(user);
+        Instant now = Instant.now();
+        refreshTokenRepository.save(RefreshTokenEntity.builder()
+                .tokenHash(TokenDigests.sha256(refreshToken))
+                .credentials(user)
+                .familyId(familyId)
+                .createdAt(now)
+                .expiresAt(now.plus(expiration))
+                .build());
+        return refreshToken;
+    }
+
+    private String opaqueToken() {
+        byte[] token = new byte[OPAQUE_TOKEN_BYTES];
+        random.nextBytes(token);
+        return ENCODER.encodeToString(token);
+    }
+}
@@ -0,0 +1,128 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel expiring items at their deadline, with constant time scheduling and expiration.
+ * Four levels of 64 slots cover 64 ticks each at the lowest level, 64^2 at the next one and so on, so with one second
+ * ticks deadlines up to about 194 days are placed directly. An item sits in the slot of the highest level that still
+ * separates it from the current tick, and moves down a level each time the wheel reaches its slot.
+ * Not thread-safe on its own, callers synchronize on the wheel.
+ *
+ * @param <T> type of the scheduled items
+ */
+final class TimingWheel<T> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (BITS * LEVELS);
+
+    private record Entry<T>(T item, long deadline) {
+    }
+
+    private final long tickMillis;
+    private final List<List<List<Entry<T>>>> levels = new ArrayList<>(LEVELS);
+    private long currentTick;
+    private int size;
+
+    /** Creates an empty wheel
+     *
+     * @param tickMillis resolution of the wheel, items expire at most one tick after their deadline
+     * @param nowMillis current time, in milliseconds since the epoch
+     */
+    TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        for (int level = 0; level < LEVELS; level++) {
+            List<List<Entry<T>>> slots = new ArrayList<>(SLOTS);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slots.add(new ArrayList<>(0));
+            }
+            levels.add(slots);
+        }
+    }
+
+    /** Schedules the expiration of an item
+     *
+     * @param item to expire
+     * @param deadlineMillis expiration time of the item, in milliseconds since the epoch
+     * @return false if the deadline already passed, the item is then not scheduled
+     */
+    boolean schedule(T item, long deadlineMillis) {
+        long deadline = Math.ceilDiv(deadlineMillis, tickMillis);
+        if (deadline <= currentTick) {
+            return false;
+        }
+        place(new Entry<>(item, deadline));
+        size++;
+        return true;
+    }
+
+    /** Moves the wheel up to the current time, handing every item whose deadline passed to the consumer
+     *
+     * @param nowMillis current time, in milliseconds since the epoch
+     * @param expired receives the expired items
+     */
+    void advance(long nowMillis, Consumer<T> expired) {
+        long target = nowMillis / tickMillis;
+        if (size == 0) {
+            currentTick = Math.max(currentTick, target); // Nothing to expire, no slot to walk through
+            return;
+        }
+        while (currentTick < target) {
+            currentTick++;
+            // Higher levels first, their items may cascade down into the level 0 slot of this very tick
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(levels.get(level).get(slotIndex(currentTick, level)));
+                }
+            }
+            List<Entry<T>> slot = levels.get(0).get(slotIndex(currentTick, 0));
+            if (!slot.isEmpty()) {
+                List<Entry<T>> entries = new ArrayList<>(slot);
+                slot.clear();
+                for (Entry<T> entry : entries) {
+                    if (entry.deadline() <= currentTick) {
+                        size--;
+                        expired.accept(entry.item());
+                    } else {
+                        place(entry); // Deadline beyond the span of the wheel, placed again until it is reached
+                    }
+                }
+            }
+        }
+    }
+
+    /** Number of items waiting to expire */
+    int size() {
+        return size;
+    }
+
+    private void cascade(List<Entry<T>> slot) {
+        if (slot.isEmpty()) {
+            return;
+        }
+        List<Entry<T>> entries = new ArrayList<>(slot);
+        slot.clear();
+        entries.forEach(this::place);
+    }
+
+    private void place(Entry<T> entry) {
+        long delta = entry.deadline() - currentTick;
+        // Deadlines beyond the span are parked in the last reachable slot and placed again from there
+        long deadline = delta < SPAN ? entry.deadline() : currentTick + SPAN - 1;
+        delta = deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        levels.get(level).get(slotIndex(deadline, level)).add(entry);
+    }
+
+    private static int slotIndex(long tick, int level) {
+        return (int) ((tick >>> (BITS * level)) & (SLOTS - 1));
+    }
+}
@@ -0,0 +1,39 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Fixed-size digests of tokens, used to index tokens without keeping the raw value around.
+ */
+public final class TokenDigests {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private TokenDigests() {
+    }
+
+    /** Computes the SHA-256 digest of a token
+     *
+     * @param token to digest
+     * @return the 32-byte digest of the token
+     */
+    public static byte[] sha256(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /** Computes the SHA-256 digest of a token, encoded as an unpadded base64url string
+     *
+     * @param token to digest
+     * @return the encoded digest, suitable as a map or cache key
+     */
+    public static String sha256Key(String token) {
+        return ENCODER.encodeToString(sha256(token));
+    }
+}
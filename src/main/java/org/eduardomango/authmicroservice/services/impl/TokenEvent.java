@@ -0,0 +1,28 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of the verification or the signing of a token, emitted by {@link JwtServiceImpl}.
+ * Verifications carry the result of the verified token cache.
+ */
+@Name(TokenEvent.NAME)
+@Label("Token Operation")
+@Description("Verification or signing of a JWT")
+public final class TokenEvent extends AuthOperationEvent {
+
+    public static final String NAME = "org.eduardomango.auth.Token";
+    public static final String VERIFY = "verify";
+    public static final String SIGN = "sign";
+
+    /** Starts timing a token operation
+     *
+     * @param operation verify or sign
+     * @return the started event
+     */
+    public static TokenEvent begin(String operation) {
+        return (TokenEvent) new TokenEvent().start(operation);
+    }
+}
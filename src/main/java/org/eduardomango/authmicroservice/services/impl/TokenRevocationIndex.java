@@ -0,0 +1,151 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.eduardomango.authmicroservice.models.auth.VerifiedToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of the access tokens revoked before their expiration, checked on every request.
+ * Single tokens are revoked by their jti, and every token of a user issued up to a moment by its subject,
+ * since issued tokens are not tracked. Tokens carry their issue time to the millisecond, and a subject revocation
+ * covers the tokens issued up to its millisecond. Older tokens with an issue time in seconds are revoked for the whole
+ * second of the revocation.
+ * Entries are only needed until the tokens they revoke expire,
+ * a timing wheel removes them then, so the index only ever holds revocations of live tokens.
+ * Lookups are lock-free reads of concurrent maps, only revocations and expirations take the wheel lock.
+ * Revocations reach every node as {@link InvalidationEvent}s published through the {@link InvalidationBus}.
+ */
+@Component
+public class TokenRevocationIndex implements MeterBinder {
+
+    private final Set<UUID> revokedTokens = ConcurrentHashMap.newKeySet();
+    private final Map<String, Instant> revokedSubjects = new ConcurrentHashMap<>();
+    private final TimingWheel<Runnable> expirations;
+    private final Duration accessTokenLifetime;
+
+    public TokenRevocationIndex(@Value("${jwt.expiration}") long accessTokenLifetimeMillis,
+                                @Value("${jwt.revocation.tick:PT1S}") Duration tick) {
+        this.accessTokenLifetime = Duration.ofMillis(accessTokenLifetimeMillis);
+        this.expirations = new TimingWheel<>(tick.toMillis(), System.currentTimeMillis());
+    }
+
+    /** Revokes a single access token until it expires
+     *
+     * @param token the verified token to revoke, tokens without a jti can only be revoked by subject
+     */
+    public void revoke(VerifiedToken token) {
+        if (token.id() != null) {
+            revoke(token.id(), token.expiresAt());
+        }
+    }
+
+    /** Revokes a single access token until it expires
+     *
+     * @param id jti of the token
+     * @param expiresAt expiration of the token, nothing is kept for expired tokens
+     */
+    public void revoke(UUID id, Instant expiresAt) {
+        if (!expiresAt.isAfter(Instant.now())) {
+            return;
+        }
+        if (revokedTokens.add(id)) {
+            synchronized (expirations) {
+                expirations.schedule(() -> revokedTokens.remove(id), expiresAt.toEpochMilli());
+            }
+        }
+    }
+
+    /** Revokes every access token of a user issued up to now, like after a password change or a lockout.
+     * The moment is kept to the millisecond, the precision of the issue time of the tokens and of the events
+     * that carry the revocation to the other nodes, so every node revokes the same tokens.
+     *
+     * @param subject username of the user
+     */
+    public void revokeSubject(String subject) {
+        revokeSubject(subject, Instant.now().truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    /** Revokes every access token of a user issued up to a moment, including the moment itself.
+     * Revoking again with an earlier moment, like when a revocation is received twice, keeps the latest one.
+     *
+     * @param subject username of the user
+     * @param revokedAt tokens issued up to this moment are revoked
+     */
+    public void revokeSubject(String subject, Instant revokedAt) {
+        // The tokens issued before the revocation are all expired after one token lifetime
+        Instant expiresAt = revokedAt.plus(accessTokenLifetime);
+        if (!expiresAt.isAfter(Instant.now())) {
+            return;
+        }
+        revokedSubjects.merge(subject, revokedAt, (current, revoked) -> current.isAfter(revoked) ? current : revoked);
+        synchronized (expirations) {
+            expirations.schedule(() -> revokedSubjects.remove(subject, revokedAt), expiresAt.toEpochMilli());
+        }
+    }
+
+    /** Applies the revocations published by this or another node
+     *
+     * @param event invalidation event, only token and subject revocations concern the index
+     */
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        switch (event.type()) {
+            case TOKEN -> revoke(UUID.fromString(event.key()), event.at());
+            case SUBJECT -> revokeSubject(event.key(), event.at());
+            default -> {
+            }
+        }
+    }
+
+    /** Checks whether a token was revoked
+     *
+     * @param token the verified token of a request
+     * @return true if the token itself or every token of its subject issued up to its issue time was revoked
+     */
+    public boolean isRevoked(VerifiedToken token) {
+        if (token.id() != null && revokedTokens.contains(token.id())) {
+            return true;
+        }
+        Instant revokedAt = revokedSubjects.get(token.subject());
+        if (revokedAt == null) {
+            return false;
+        }
+        return token.issuedAt() == null || !token.issuedAt().isAfter(revokedAt);
+    }
+
+    /**
+     * Drops the revocations whose tokens have all expired.
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.tick:PT1S}")
+    public void expire() {
+        synchronized (expirations) {
+            expirations.advance(System.currentTimeMillis(), Runnable::run);
+        }
+    }
+
+    /** Number of revocations of live tokens held by the index */
+    public int size() {
+        return revokedTokens.size() + revokedSubjects.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("auth.token.revocations", this, TokenRevocationIndex::size)
+                .description("Revocations of access tokens that have not expired yet")
+                .register(registry);
+    }
+}
@@ -0,0 +1,114 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.eduardomango.authmicroservice.config.JwtKeysRotatedEvent;
+import org.eduardomango.authmicroservice.models.auth.VerifiedToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of tokens whose signature was already verified, keyed by the SHA-256 digest of the token.
+ * An entry lives at most the configured ttl and never past the expiration of its token,
+ * so a hit can skip the signature verification entirely.
+ * A max size of 0 disables the cache.
+ */
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+
+    private final Cache<String, VerifiedToken> cache;
+    private final boolean enabled;
+
+    public VerifiedTokenCache(@Value("${jwt.cache.max-size:10000}") long maxSize,
+                              @Value("${jwt.cache.ttl:5m}") Duration ttl) {
+        this.enabled = maxSize > 0;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry(ttl))
+                .recordStats()
+                .build();
+    }
+
+    /** Returns the verified token for a raw token, verifying it only on a cache miss
+     *
+     * @param token raw JWT token
+     * @param verifier verifies the signature of the token, called only on a miss
+     * @return the verified token
+     */
+    public VerifiedToken get(String token, Function<String, VerifiedToken> verifier) {
+        if (!enabled) {
+            return verifier.apply(token);
+        }
+        String key = TokenDigests.sha256Key(token);
+        VerifiedToken verified = cache.getIfPresent(key);
+        if (verified == null) {
+            verified = verifier.apply(token);
+            cache.put(key, verified);
+        }
+        return verified;
+    }
+
+    /**
+     * Removes every cached token, forcing the next request of each token to verify its signature again.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /** Drops the cached tokens when a key leaves the key ring, tokens signed with it must not verify anymore.
+     * Adding keys keeps the cache warm.
+     *
+     * @param event rotation of the key ring
+     */
+    @EventListener
+    public void onKeysRotated(JwtKeysRotatedEvent event) {
+        if (event.keysRemoved()) {
+            invalidateAll();
+        }
+    }
+
+    /** Hit, miss and eviction counters of the cache
+     *
+     * @return snapshot of the cache statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "verifiedTokens");
+    }
+
+    /**
+     * Expires each entry after the ttl or at the expiration of its token, whichever comes first.
+     */
+    private record TokenExpiry(Duration ttl) implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+            long untilExpiration = Duration.between(Instant.now(), token.expiresAt()).toNanos();
+            return Math.max(0, Math.min(ttl.toNanos(), untilExpiration));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, token, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -7,7 +7,10 @@ import org.eduardomango.authmicroservice.models.auth.AuthResponse;
 public interface AuthService {
 
     CredentialsEntity authenticate(AuthRequest input);
+    AuthResponse startSession(CredentialsEntity user);
     AuthResponse refreshAccessToken(String refreshToken);
+    void logout(String accessToken, String refreshToken);
+    void revokeSessions(Long id);
     void updateCredentials(Long id, AuthRequest newCredentials);
     void addUser(CredentialsEntity user);
 }
@@ -1,13 +1,16 @@
 package org.eduardomango.authmicroservice.services.interfaces;
 
+import org.eduardomango.authmicroservice.models.auth.VerifiedToken;
 import org.springframework.security.core.userdetails.UserDetails;
 
 public interface JwtService {
 
     String extractUsername(String token);
+    VerifiedToken verify(String token);
     String generateToken(UserDetails userDetails);
     String generateRefreshToken(UserDetails userDetails);
     boolean isTokenValid(String token, UserDetails userDetails);
+    boolean isTokenValid(VerifiedToken token, UserDetails userDetails);
     boolean validateRefreshToken(String refreshToken, UserDetails userDetails);
 
 }
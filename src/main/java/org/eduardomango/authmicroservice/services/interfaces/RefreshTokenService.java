@@ -0,0 +1,16 @@
+package org.eduardomango.authmicroservice.services.interfaces;
+
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.auth.RefreshCredentials;
+
+import java.util.Optional;
+
+public interface RefreshTokenService {
+
+    String issue(CredentialsEntity user);
+    Optional<RefreshCredentials> find(String refreshToken);
+    boolean isValid(String refreshToken, CredentialsEntity user);
+    String rotate(String refreshToken, RefreshCredentials current, CredentialsEntity user);
+    void revoke(String refreshToken);
+    void revokeAll(Long credentialsId);
+}
@@ -0,0 +1,104 @@
+package org.eduardomango.authmicroservice.config;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.eduardomango.authmicroservice.services.impl.AuthMetrics;
+import org.eduardomango.authmicroservice.services.impl.AuthenticationEvent;
+import org.eduardomango.authmicroservice.services.impl.TokenDigests;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightRecordingsTest {
+
+    private FlightRecordings flightRecordings;
+
+    @AfterEach
+    void tearDown() {
+        flightRecordings.stop();
+    }
+
+    @Test
+    void start_ShouldKeepOnlyTheSlowAuthEventsInTheContinuousRecording() throws Exception {
+        // Given
+        flightRecordings = flightRecordings(true);
+        flightRecordings.start();
+
+        // When
+        login("fast@example.com", 0);
+        login("slow@example.com", 60);
+
+        // Then
+        assertTrue(flightRecordings.isRunning());
+        List<RecordedEvent> logins = logins(flightRecordings.dump());
+        assertEquals(1, logins.size());
+        assertEquals(TokenDigests.sha256Key("slow@example.com"), logins.get(0).getString("usernameHash"));
+        assertTrue(logins.get(0).getDuration().compareTo(Duration.ofMillis(50)) >= 0);
+    }
+
+    @Test
+    void startRecording_ShouldBoundTheRecordingAndKeepEveryAuthEventOnceStopped() throws Exception {
+        // Given
+        flightRecordings = flightRecordings(false);
+
+        // When
+        Map<String, Object> started = flightRecordings.startRecording(Duration.ofHours(1));
+        login("fast@example.com", 0);
+        Map<String, Object> stopped = flightRecordings.stopRecording();
+
+        // Then
+        assertEquals("RUNNING", state(started, "onDemand"));
+        assertEquals(Duration.ofMinutes(1), ((Map<?, ?>) started.get("onDemand")).get("duration"));
+        assertEquals("STOPPED", state(stopped, "onDemand"));
+        assertEquals("NONE", state(stopped, "continuous"));
+        List<RecordedEvent> logins = logins(flightRecordings.dump());
+        assertEquals(1, logins.size());
+        assertEquals(AuthMetrics.SUCCESS, logins.get(0).getString("outcome"));
+    }
+
+    @Test
+    void dump_WithoutRecordings_ShouldReturnNull() throws Exception {
+        // Given
+        flightRecordings = flightRecordings(false);
+        flightRecordings.start();
+
+        // Then
+        assertFalse(flightRecordings.isRunning());
+        assertNull(flightRecordings.dump());
+    }
+
+    private static FlightRecordings flightRecordings(boolean continuous) {
+        return new FlightRecordings(continuous, Duration.ofMinutes(1), DataSize.ofMegabytes(16),
+                Duration.ofMillis(50), Duration.ofMinutes(1), DataSize.ofMegabytes(16));
+    }
+
+    private static void login(String username, long millis) throws InterruptedException {
+        AuthenticationEvent event = AuthenticationEvent.begin(AuthenticationEvent.LOGIN);
+        event.username(username);
+        Thread.sleep(millis);
+        event.complete(AuthMetrics.SUCCESS);
+    }
+
+    private static List<RecordedEvent> logins(Path dump) throws IOException {
+        try {
+            return RecordingFile.readAllEvents(dump).stream()
+                    .filter(event -> event.getEventType().getName().equals(AuthenticationEvent.NAME))
+                    .toList();
+        } finally {
+            Files.delete(dump);
+        }
+    }
+
+    private static Object state(Map<String, Object> status, String recording) {
+        return ((Map<?, ?>) status.get(recording)).get("state");
+    }
+}
@@ -0,0 +1,108 @@
+package org.eduardomango.authmicroservice.config;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GithubClientConfigTest {
+
+    private static final Duration READ_TIMEOUT = Duration.ofMillis(300);
+
+    private final GithubClientConfig config = new GithubClientConfig();
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+    private HttpServer stub;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Local stub of the GitHub API, /slow answers after the read timeout
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/user", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "{\"login\":\"octocat\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        stub.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(READ_TIMEOUT.multipliedBy(5).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        stub.start();
+
+        connectionManager = config.githubConnectionManager(10, 5, Duration.ofSeconds(1), READ_TIMEOUT, Duration.ofMinutes(5));
+        restTemplate = config.githubRestTemplate(new RestTemplateBuilder(), connectionManager,
+                "http://localhost:" + stub.getAddress().getPort(), Duration.ofSeconds(1), READ_TIMEOUT, Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionManager.close();
+        stub.stop(0);
+    }
+
+    @Test
+    void githubRestTemplate_ShouldResolvePathsAgainstTheBaseUrl() {
+        // When
+        String body = restTemplate.getForObject("/user", String.class);
+
+        // Then
+        assertEquals("{\"login\":\"octocat\"}", body);
+    }
+
+    @Test
+    void githubRestTemplate_ShouldReuseTheConnectionBetweenCalls() {
+        // When
+        restTemplate.getForObject("/user", String.class);
+        restTemplate.getForObject("/user", String.class);
+        restTemplate.getForObject("/user", String.class);
+
+        // Then
+        assertEquals(3, clientPorts.size());
+        assertEquals(1, clientPorts.stream().distinct().count(), "every call should use the same pooled connection");
+        assertEquals(1, connectionManager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    void githubRestTemplate_WithSlowServer_ShouldFailAfterTheReadTimeout() {
+        // Given
+        long start = System.nanoTime();
+
+        // When
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject("/slow", String.class));
+
+        // Then
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertTrue(elapsed.compareTo(READ_TIMEOUT.multipliedBy(3)) < 0, "took " + elapsed);
+    }
+
+    @Test
+    void githubConnectionManager_ShouldLimitConnectionsPerRoute() {
+        // Then
+        assertEquals(10, connectionManager.getMaxTotal());
+        assertEquals(5, connectionManager.getDefaultMaxPerRoute());
+    }
+}
@@ -0,0 +1,136 @@
+package org.eduardomango.authmicroservice.config;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtKeyRotationSchedulerTest {
+
+    private static final Duration REFRESH_INTERVAL = Duration.ofMinutes(1);
+    private static final Duration JWKS_MAX_AGE = Duration.ofMinutes(5);
+    private static final Duration PROMOTION_DELAY = JwtKeyProvider.promotionDelay(null, REFRESH_INTERVAL, JWKS_MAX_AGE);
+
+    @TempDir
+    Path directory;
+
+    private final List<Object> events = new ArrayList<>();
+    private JwtKeyProvider keyProvider;
+    private JwtKeyRotationScheduler scheduler;
+    private JwtKey currentKey;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        currentKey = writeKey("current", Instant.now().minus(Duration.ofDays(1)));
+        keyProvider = new JwtKeyProvider(currentKey, List.of());
+        scheduler = new JwtKeyRotationScheduler(keyProvider, events::add, directory, SignatureAlgorithm.RS256,
+                Duration.ofDays(7), PROMOTION_DELAY);
+    }
+
+    @Test
+    void refresh_WithNewKey_ShouldPublishItAndKeepSigningWithThePreviousKey() throws Exception {
+        // Given
+        JwtKey newKey = writeKey("new", Instant.now());
+
+        // When
+        scheduler.refresh();
+
+        // Then
+        assertEquals(currentKey.kid(), keyProvider.getSigningKey().kid());
+        assertNotNull(keyProvider.findVerificationKey(newKey.kid()));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void refresh_WithKeyPublishedForThePromotionDelay_ShouldSignWithIt() throws Exception {
+        // Given
+        JwtKey newKey = writeKey("new", Instant.now());
+        scheduler.refresh();
+        touch("new", Instant.now().minus(PROMOTION_DELAY));
+
+        // When
+        scheduler.refresh();
+
+        // Then
+        assertEquals(newKey.kid(), keyProvider.getSigningKey().kid());
+        assertNotNull(keyProvider.findVerificationKey(currentKey.kid()));
+    }
+
+    @Test
+    void signingKey_WithStaggeredDiscoveryAndCachedJwks_ShouldNotSignBeforeEveryVerifierKnowsTheKey() throws Exception {
+        // Given
+        Instant written = Instant.now().minus(Duration.ofHours(1));
+        JwtKey newKey = writeKey("new", written);
+        List<JwtKeyFiles.DirectoryKey> keys = JwtKeyFiles.readDirectory(directory, SignatureAlgorithm.RS256);
+        // The last node reads the key a refresh interval late, just after a verifier cached its previous JWKS
+        Instant lastDiscovery = written.plus(REFRESH_INTERVAL);
+        Instant cacheExpiry = lastDiscovery.plus(JWKS_MAX_AGE);
+
+        // When
+        JwtKey beforeExpiry = JwtKeyProvider.signingKey(keys, cacheExpiry.minusSeconds(1), PROMOTION_DELAY);
+        JwtKey afterPromotion = JwtKeyProvider.signingKey(keys, written.plus(PROMOTION_DELAY), PROMOTION_DELAY);
+
+        // Then
+        assertEquals(currentKey.kid(), beforeExpiry.kid());
+        assertEquals(newKey.kid(), afterPromotion.kid());
+    }
+
+    @Test
+    void promotionDelay_ShorterThanTwoRefreshIntervalsAndTheJwksMaxAge_ShouldBeRejected() {
+        // When / Then
+        assertThrows(IllegalStateException.class,
+                () -> JwtKeyProvider.promotionDelay(REFRESH_INTERVAL, REFRESH_INTERVAL, JWKS_MAX_AGE));
+        assertEquals(Duration.ofMinutes(7), PROMOTION_DELAY);
+    }
+
+    @Test
+    void signingKey_WithOnlyNewKeys_ShouldSignWithTheNewest() throws Exception {
+        // Given
+        Files.delete(directory.resolve("current" + JwtKeyFiles.PUBLIC_KEY_SUFFIX));
+        Files.delete(directory.resolve("current" + JwtKeyFiles.PRIVATE_KEY_SUFFIX));
+        writeKey("older", Instant.now().minusSeconds(10));
+        JwtKey newest = writeKey("newest", Instant.now());
+
+        // When
+        JwtKey signingKey = JwtKeyProvider.signingKey(JwtKeyFiles.readDirectory(directory, SignatureAlgorithm.RS256),
+                Instant.now(), REFRESH_INTERVAL);
+
+        // Then
+        assertEquals(newest.kid(), signingKey.kid());
+    }
+
+    private JwtKey writeKey(String name, Instant modifiedAt) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        Files.writeString(directory.resolve(name + JwtKeyFiles.PUBLIC_KEY_SUFFIX),
+                pem("PUBLIC KEY", keyPair.getPublic().getEncoded()));
+        Files.writeString(directory.resolve(name + JwtKeyFiles.PRIVATE_KEY_SUFFIX),
+                pem("PRIVATE KEY", keyPair.getPrivate().getEncoded()));
+        touch(name, modifiedAt);
+        return JwtKey.of(SignatureAlgorithm.RS256, keyPair.getPrivate(), keyPair.getPublic());
+    }
+
+    private void touch(String name, Instant modifiedAt) throws Exception {
+        Files.setLastModifiedTime(directory.resolve(name + JwtKeyFiles.PUBLIC_KEY_SUFFIX), FileTime.from(modifiedAt));
+        Files.setLastModifiedTime(directory.resolve(name + JwtKeyFiles.PRIVATE_KEY_SUFFIX), FileTime.from(modifiedAt));
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n" + Base64.getMimeEncoder().encodeToString(der)
+                + "\n-----END " + type + "-----\n";
+    }
+}
@@ -0,0 +1,97 @@
+package org.eduardomango.authmicroservice.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashingTest {
+
+    @Test
+    void delegatingEncoder_ShouldMatchAndUpgradeLegacyBcryptHashes() {
+        // Given
+        PasswordEncoder passwordEncoder = PasswordHashing.delegatingEncoder(PasswordHashing.BCRYPT, 4);
+        String legacyHash = new BCryptPasswordEncoder(4).encode("password");
+
+        // When/Then
+        assertTrue(passwordEncoder.matches("password", legacyHash));
+        assertTrue(passwordEncoder.upgradeEncoding(legacyHash));
+    }
+
+    @Test
+    void delegatingEncoder_ShouldUpgradeHashesWithLowerCost() {
+        // Given
+        String lowCostHash = PasswordHashing.delegatingEncoder(PasswordHashing.BCRYPT, 4).encode("password");
+        PasswordEncoder passwordEncoder = PasswordHashing.delegatingEncoder(PasswordHashing.BCRYPT, 5);
+
+        // When
+        String newHash = passwordEncoder.encode("password");
+
+        // Then
+        assertTrue(lowCostHash.startsWith("{bcrypt}$2a$04$"));
+        assertTrue(passwordEncoder.matches("password", lowCostHash));
+        assertTrue(passwordEncoder.upgradeEncoding(lowCostHash));
+        assertFalse(passwordEncoder.upgradeEncoding(newHash));
+    }
+
+    @Test
+    void delegatingEncoder_WithArgon2_ShouldUpgradeBcryptHashes() {
+        // Given
+        String bcryptHash = PasswordHashing.delegatingEncoder(PasswordHashing.BCRYPT, 4).encode("password");
+        PasswordEncoder passwordEncoder = PasswordHashing.delegatingEncoder(PasswordHashing.ARGON2, 2);
+
+        // When
+        String argon2Hash = passwordEncoder.encode("password");
+
+        // Then
+        assertTrue(argon2Hash.startsWith("{argon2}$argon2id$"));
+        assertTrue(passwordEncoder.matches("password", argon2Hash));
+        assertTrue(passwordEncoder.matches("password", bcryptHash));
+        assertTrue(passwordEncoder.upgradeEncoding(bcryptHash));
+        assertFalse(passwordEncoder.upgradeEncoding(argon2Hash));
+    }
+
+    @Test
+    void calibrate_ShouldPickHighestCostWithinBudget() {
+        // Given a hash taking cost milliseconds
+        Duration budget = Duration.ofMillis(12);
+
+        // When
+        int cost = PasswordHashing.calibrate(sleepingEncoder(), 5, 20, budget);
+
+        // Then
+        assertTrue(cost >= 5 && cost <= 12, "cost " + cost);
+    }
+
+    @Test
+    void calibrate_WithBudgetBelowMinimumCost_ShouldPickMinimumCost() {
+        // When
+        int cost = PasswordHashing.calibrate(sleepingEncoder(), 5, 20, Duration.ofMillis(1));
+
+        // Then
+        assertEquals(5, cost);
+    }
+
+    private static IntFunction<PasswordEncoder> sleepingEncoder() {
+        return cost -> new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                try {
+                    Thread.sleep(cost);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return rawPassword.toString().equals(encodedPassword);
+            }
+        };
+    }
+}
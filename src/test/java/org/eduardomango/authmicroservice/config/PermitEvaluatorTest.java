@@ -0,0 +1,49 @@
+package org.eduardomango.authmicroservice.config;
+
+import org.eduardomango.authmicroservice.models.Enum.UserPermit;
+import org.eduardomango.authmicroservice.models.auth.JwtPrincipal;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PermitEvaluatorTest {
+
+    private final PermitEvaluator permitEvaluator = new PermitEvaluator();
+
+    @Test
+    void has_WithJwtPrincipal_ShouldCheckThePermissionMask() {
+        // Given
+        JwtPrincipal principal = new JwtPrincipal("customer", List.of(),
+                UserPermit.PRODUCT_READ.mask() | UserPermit.ORDER_CREATE.mask());
+        Authentication authentication = new UsernamePasswordAuthenticationToken(principal, null, List.of());
+
+        // When/Then
+        assertTrue(permitEvaluator.has(authentication, UserPermit.PRODUCT_READ));
+        assertTrue(permitEvaluator.has(authentication, UserPermit.ORDER_CREATE));
+        assertFalse(permitEvaluator.has(authentication, UserPermit.USER_DELETE));
+    }
+
+    @Test
+    void has_WithOtherPrincipal_ShouldCheckTheAuthorities() {
+        // Given
+        List<SimpleGrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("user:read"));
+        Authentication authentication = new UsernamePasswordAuthenticationToken(
+                new User("admin", "password", authorities), null, authorities);
+
+        // When/Then
+        assertTrue(permitEvaluator.has(authentication, UserPermit.USER_READ));
+        assertFalse(permitEvaluator.has(authentication, UserPermit.USER_DELETE));
+    }
+
+    @Test
+    void has_WithoutAuthentication_ShouldDeny() {
+        // When/Then
+        assertFalse(permitEvaluator.has(null, UserPermit.USER_READ));
+    }
+}
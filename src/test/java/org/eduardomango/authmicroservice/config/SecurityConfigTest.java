@@ -0,0 +1,158 @@
+package org.eduardomango.authmicroservice.config;
+
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eduardomango.authmicroservice.services.JpaUserDetailsService;
+import org.eduardomango.authmicroservice.services.impl.AuthMetrics;
+import org.eduardomango.authmicroservice.services.impl.TokenRevocationIndex;
+import org.eduardomango.authmicroservice.services.interfaces.JwtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.oauth2.client.CommonOAuth2Provider;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * Authorization rules of the filter chain of {@link SecurityConfig}, against stub handlers of the actuator paths.
+ */
+@SpringJUnitWebConfig(SecurityConfigTest.Config.class)
+@TestPropertySource(properties = "password-hashing.cost=4")
+class SecurityConfigTest {
+
+    @Autowired
+    private WebApplicationContext context;
+    @Autowired
+    private JwtService jwtService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    void referenceDataFlush_WithCustomer_ShouldBeForbidden() throws Exception {
+        // When/Then
+        mockMvc.perform(delete("/actuator/referencedata").with(user("customer").roles("CUSTOMER")))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void referenceDataFlush_WithAdmin_ShouldBeAllowed() throws Exception {
+        // When/Then
+        mockMvc.perform(delete("/actuator/referencedata").with(user("admin").roles("ADMIN")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void metricsAndRecordings_WithCustomer_ShouldBeForbidden() throws Exception {
+        // When/Then
+        for (String path : new String[]{"/actuator/metrics", "/actuator/metrics/auth.token.verify",
+                "/actuator/prometheus", "/actuator/flightrecorder"}) {
+            mockMvc.perform(get(path).with(user("customer").roles("CUSTOMER")))
+                    .andExpect(status().isForbidden());
+        }
+    }
+
+    @Test
+    void health_WithCustomer_ShouldBeAllowed() throws Exception {
+        // When/Then
+        mockMvc.perform(get("/actuator/health").with(user("customer").roles("CUSTOMER")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void bearerToken_WithUnknownSigningKey_ShouldBeUnauthorized() throws Exception {
+        // Given
+        when(jwtService.verify("unknown-key-token")).thenThrow(new UnsupportedJwtException("Unknown signing key: kid"));
+
+        // When/Then
+        mockMvc.perform(get("/actuator/health").header("Authorization", "Bearer unknown-key-token"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Configuration
+    @EnableWebMvc
+    @EnableWebSecurity
+    @Import({SecurityConfig.class, RestAuthenticationEntryPoint.class, ActuatorStub.class})
+    static class Config {
+
+        // Converts the durations of the @Value parameters, like Spring Boot does
+        @Bean
+        static ConversionService conversionService() {
+            return ApplicationConversionService.getSharedInstance();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        JpaUserDetailsService jpaUserDetailsService() {
+            return mock(JpaUserDetailsService.class);
+        }
+
+        @Bean
+        JwtService jwtService() {
+            return mock(JwtService.class);
+        }
+
+        @Bean
+        JwtAuthenticationFilter jwtAuthenticationFilter(JpaUserDetailsService userDetailsService, JwtService jwtService,
+                                                        MeterRegistry registry) {
+            return new JwtAuthenticationFilter(userDetailsService, jwtService,
+                    new TokenRevocationIndex(Duration.ofMinutes(15).toMillis(), Duration.ofSeconds(1)), new AuthMetrics(registry), true);
+        }
+
+        @Bean
+        ClientRegistrationRepository clientRegistrationRepository() {
+            return new InMemoryClientRegistrationRepository(CommonOAuth2Provider.GITHUB.getBuilder("github")
+                    .clientId("client-id")
+                    .clientSecret("client-secret")
+                    .build());
+        }
+    }
+
+    @RestController
+    static class ActuatorStub {
+
+        @GetMapping({"/actuator/health", "/actuator/metrics", "/actuator/metrics/{name}", "/actuator/prometheus",
+                "/actuator/flightrecorder", "/actuator/referencedata"})
+        String read() {
+            return "ok";
+        }
+
+        @DeleteMapping("/actuator/referencedata")
+        void invalidate() {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.eduardomango.authmicroservice.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadPinningMonitorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final VirtualThreadPinningMonitor monitor = new VirtualThreadPinningMonitor(registry, Duration.ofMillis(20));
+
+    @AfterEach
+    void tearDown() {
+        monitor.stop();
+    }
+
+    @Test
+    void pinned_ShouldTimeEveryPinning() {
+        // Given
+        List<String> frames = List.of("org.postgresql.core.v3.QueryExecutorImpl.execute:371", "java.lang.Thread.run");
+
+        // When
+        monitor.pinned(Duration.ofMillis(30), frames);
+        monitor.pinned(Duration.ofMillis(50), frames);
+
+        // Then
+        assertEquals(2, monitor.pinnedCount());
+        assertEquals(80, registry.get("jvm.threads.virtual.pinned").timer().totalTime(TimeUnit.MILLISECONDS), 0.001);
+    }
+
+    @Test
+    void start_WithVirtualThreadBlockedInSynchronized_ShouldReportThePinning() throws Exception {
+        // Synchronized blocks stopped pinning virtual threads in Java 24
+        assumeTrue(Runtime.version().feature() < 24);
+        // Given
+        monitor.start();
+        Object lock = new Object();
+
+        // When
+        Thread.ofVirtual().start(() -> {
+            synchronized (lock) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).join();
+
+        // Then
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (monitor.pinnedCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(monitor.isRunning());
+        assertEquals(1, monitor.pinnedCount());
+    }
+}
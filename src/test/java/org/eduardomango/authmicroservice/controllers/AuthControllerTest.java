@@ -5,6 +5,7 @@ import org.eduardomango.authmicroservice.config.JwtAuthenticationFilter;
 import org.eduardomango.authmicroservice.config.SecurityTestConfig;
 import org.eduardomango.authmicroservice.models.CredentialsEntity;
 import org.eduardomango.authmicroservice.models.auth.AuthRequest;
+import org.eduardomango.authmicroservice.models.auth.AuthResponse;
 import org.eduardomango.authmicroservice.services.interfaces.AuthService;
 import org.eduardomango.authmicroservice.services.interfaces.JwtService;
 import org.junit.jupiter.api.BeforeEach;
@@ -73,8 +74,8 @@ public class AuthControllerTest {
         // Arrange
         when(authenticationService.authenticate(any(AuthRequest.class)))
                 .thenReturn(validCredentials);
-        when(jwtService.generateToken(any(CredentialsEntity.class)))
-                .thenReturn(TEST_JWT);
+        when(authenticationService.startSession(any(CredentialsEntity.class)))
+                .thenReturn(new AuthResponse(TEST_JWT, "refresh-token"));
 
         // Act & Assert
         mockMvc.perform(post("/login")
@@ -86,7 +87,7 @@ public class AuthControllerTest {
                 .andDo(print());
 
         verify(authenticationService).authenticate(any(AuthRequest.class));
-        verify(jwtService).generateToken(any(CredentialsEntity.class));
+        verify(authenticationService).startSession(any(CredentialsEntity.class));
     }
 
     @Test
@@ -104,7 +105,7 @@ public class AuthControllerTest {
                 .andDo(print());
 
         verify(authenticationService).authenticate(any(AuthRequest.class));
-        verify(jwtService, never()).generateToken(any(CredentialsEntity.class));
+        verify(authenticationService, never()).startSession(any(CredentialsEntity.class));
     }
 
     @Test
@@ -121,7 +122,7 @@ public class AuthControllerTest {
                 .andDo(print());
 
         verify(authenticationService, never()).authenticate(any(AuthRequest.class));
-        verify(jwtService, never()).generateToken(any(CredentialsEntity.class));
+        verify(authenticationService, never()).startSession(any(CredentialsEntity.class));
     }
 
     @Test
@@ -137,6 +138,6 @@ public class AuthControllerTest {
                 .andDo(print());
 
         verify(authenticationService, never()).authenticate(any(AuthRequest.class));
-        verify(jwtService, never()).generateToken(any(CredentialsEntity.class));
+        verify(authenticationService, never()).startSession(any(CredentialsEntity.class));
     }
 }
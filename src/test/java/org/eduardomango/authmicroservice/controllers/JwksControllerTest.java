@@ -0,0 +1,83 @@
+package org.eduardomango.authmicroservice.controllers;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.eduardomango.authmicroservice.config.JwtKey;
+import org.eduardomango.authmicroservice.config.JwtKeyProvider;
+import org.eduardomango.authmicroservice.config.JwtKeysRotatedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class JwksControllerTest {
+
+    private MockMvc mockMvc;
+    private JwtKeyProvider keyProvider;
+    private JwksController jwksController;
+    private JwtKey signingKey;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        signingKey = rsaKey();
+        keyProvider = new JwtKeyProvider(signingKey, List.of());
+        jwksController = new JwksController(keyProvider, Duration.ofMinutes(1));
+        mockMvc = MockMvcBuilders.standaloneSetup(jwksController).build();
+    }
+
+    private static JwtKey rsaKey() throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        return JwtKey.of(SignatureAlgorithm.RS256, keyPair.getPrivate(), keyPair.getPublic());
+    }
+
+    @Test
+    void getJwks_ShouldReturnKeysWithEtagAndMaxAge() throws Exception {
+        // When/Then
+        mockMvc.perform(get("/.well-known/jwks.json"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=60, public"))
+                .andExpect(jsonPath("$.keys[0].kid").value(signingKey.kid()))
+                .andExpect(jsonPath("$.keys[0].d").doesNotExist());
+    }
+
+    @Test
+    void getJwks_WithMatchingIfNoneMatch_ShouldReturnNotModified() throws Exception {
+        // Given
+        String etag = mockMvc.perform(get("/.well-known/jwks.json"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // When/Then
+        mockMvc.perform(get("/.well-known/jwks.json").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void getJwks_AfterRotation_ShouldReturnNewKeysAndEtag() throws Exception {
+        // Given
+        String etag = mockMvc.perform(get("/.well-known/jwks.json"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        JwtKey newKey = rsaKey();
+        keyProvider.rotate(newKey, List.of(signingKey));
+
+        // When
+        jwksController.onKeysRotated(new JwtKeysRotatedEvent(newKey, keyProvider.getVerificationKeys(), false));
+
+        // Then
+        String newEtag = mockMvc.perform(get("/.well-known/jwks.json").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.keys.length()").value(2))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, newEtag);
+    }
+}
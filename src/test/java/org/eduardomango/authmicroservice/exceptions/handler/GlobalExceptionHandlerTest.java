@@ -0,0 +1,37 @@
+package org.eduardomango.authmicroservice.exceptions.handler;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GlobalExceptionHandlerTest {
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+
+    @Test
+    void handleResourceAccessException_WithTimeout_ShouldReturnGatewayTimeout() {
+        // When
+        ResponseEntity<Map<String, String>> response = handler.handleResourceAccessException(
+                new ResourceAccessException("GitHub did not answer", new SocketTimeoutException("Read timed out")));
+
+        // Then
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+    }
+
+    @Test
+    void handleResourceAccessException_WithUnreachableService_ShouldReturnServiceUnavailable() {
+        // When
+        ResponseEntity<Map<String, String>> response = handler.handleResourceAccessException(
+                new ResourceAccessException("GitHub could not be reached", new ConnectException("Connection refused")));
+
+        // Then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+    }
+}
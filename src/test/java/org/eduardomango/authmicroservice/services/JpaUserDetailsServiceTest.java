@@ -1,13 +1,16 @@
 package org.eduardomango.authmicroservice.services;
 
 import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.auth.LoginCredentials;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.eduardomango.authmicroservice.repositories.CredentialsRepository;
+import org.eduardomango.authmicroservice.services.impl.AuthorityResolver;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.Optional;
@@ -25,6 +28,9 @@ class JpaUserDetailsServiceTest {
     @Mock
     CredentialsRepository credentialsRepository;
 
+    @Spy
+    AuthorityResolver authorityResolver = new AuthorityResolver();
+
     private String username;
 
     @Test
@@ -33,7 +39,7 @@ class JpaUserDetailsServiceTest {
         username = "invalidUsername";
 
         //Find empty
-        when(credentialsRepository.findByUsername(username))
+        when(credentialsRepository.findWithAuthoritiesByUsername(username))
                 .thenReturn(Optional.empty());
 
         assertThrows(UsernameNotFoundException.class, () -> {
@@ -41,7 +47,7 @@ class JpaUserDetailsServiceTest {
         });
 
         //Verify the method was called
-        verify(credentialsRepository).findByUsername(username);
+        verify(credentialsRepository).findWithAuthoritiesByUsername(username);
     }
 
     @Test
@@ -52,7 +58,7 @@ class JpaUserDetailsServiceTest {
         credentialsEntity.setUsername(username);
         credentialsEntity.setPassword("password");
 
-        when(credentialsRepository.findByUsername(username))
+        when(credentialsRepository.findWithAuthoritiesByUsername(username))
                 .thenReturn(Optional.of(credentialsEntity));
 
         //When
@@ -63,7 +69,7 @@ class JpaUserDetailsServiceTest {
         assertEquals(username, result.getUsername());
         assertEquals(credentialsEntity.getPassword(), result.getPassword());
 
-        verify(credentialsRepository).findByUsername(username);
+        verify(credentialsRepository).findWithAuthoritiesByUsername(username);
     }
 
     @Test
@@ -71,7 +77,7 @@ class JpaUserDetailsServiceTest {
         //Given
         username = null;
         //Find empty
-        when(credentialsRepository.findByUsername(null))
+        when(credentialsRepository.findWithAuthoritiesByUsername(null))
                 .thenReturn(Optional.empty());
 
         assertThrows(UsernameNotFoundException.class, () -> {
@@ -79,6 +85,49 @@ class JpaUserDetailsServiceTest {
         });
 
         //Verify the method was called
-        verify(credentialsRepository).findByUsername(username);
+        verify(credentialsRepository).findWithAuthoritiesByUsername(username);
+    }
+
+    @Test
+    void updatePassword_ShouldStoreTheNewHash() {
+        //Given
+        CredentialsEntity credentialsEntity = new CredentialsEntity();
+        credentialsEntity.setUsername("validUsername");
+        credentialsEntity.setPassword("$2a$04$legacyHash");
+        when(credentialsRepository.save(credentialsEntity)).thenReturn(credentialsEntity);
+
+        //When
+        UserDetails result = jpaUserDetailsService.updatePassword(credentialsEntity, "{bcrypt}$2a$12$newHash");
+
+        //Then
+        assertEquals("{bcrypt}$2a$12$newHash", result.getPassword());
+        verify(credentialsRepository).save(credentialsEntity);
+    }
+
+    @Test
+    void loadLoginCredentials_ShouldReturnTheLoginProjection() {
+        //Given
+        LoginCredentials login = new LoginCredentials(1L, "validUsername", "hash", 2L);
+        when(credentialsRepository.findLoginByUsername("validUsername")).thenReturn(Optional.of(login));
+
+        //When
+        UserDetails result = jpaUserDetailsService.loadLoginCredentials("validUsername");
+
+        //Then
+        assertSame(login, result);
+        assertTrue(result.getAuthorities().isEmpty());
+    }
+
+    @Test
+    void updatePassword_WithLoginCredentials_ShouldUpdateOnlyThePassword() {
+        //Given
+        LoginCredentials login = new LoginCredentials(1L, "validUsername", "$2a$04$legacyHash", 2L);
+
+        //When
+        UserDetails result = jpaUserDetailsService.updatePassword(login, "{bcrypt}$2a$12$newHash");
+
+        //Then
+        assertEquals("{bcrypt}$2a$12$newHash", result.getPassword());
+        verify(credentialsRepository).updatePassword(1L, "{bcrypt}$2a$12$newHash");
     }
 }
@@ -0,0 +1,274 @@
+package org.eduardomango.authmicroservice.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.eduardomango.authmicroservice.config.GithubClientConfig;
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.auth.AuthResponse;
+import org.eduardomango.authmicroservice.models.auth.GithubUserResponse;
+import org.eduardomango.authmicroservice.models.auth.TokenRequest;
+import org.eduardomango.authmicroservice.services.impl.AuthMetrics;
+import org.eduardomango.authmicroservice.services.impl.GithubUserCache;
+import org.eduardomango.authmicroservice.services.interfaces.AuthService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OAuth2ServiceImplTest {
+
+    @Mock
+    private JpaUserDetailsService userDetailsService;
+    @Mock
+    private AuthService authService;
+
+    private static final Duration EXCHANGE_TIMEOUT = Duration.ofSeconds(2);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger githubCalls = new AtomicInteger();
+    private final AtomicInteger emailsCalls = new AtomicInteger();
+    private GithubClientConfig config;
+    private boolean prefetchEmails = true;
+    private volatile String profile = "{\"id\":1,\"login\":\"octocat\",\"email\":\"octocat@example.com\",\"name\":\"Octocat\"}";
+    private volatile int emailsStatus = 200;
+    private volatile Duration latency = Duration.ZERO;
+    private HttpServer githubStub;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private ExecutorService githubExecutor;
+    private OAuth2ServiceImpl oauth2Service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Local stub of GET /user and GET /user/emails of the GitHub API, accepting only tokens starting with "valid-token"
+        githubStub = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+        githubStub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        githubStub.createContext("/user", exchange -> {
+            if (exchange.getRequestURI().getPath().equals("/user")) {
+                githubCalls.incrementAndGet();
+            }
+            sleep(latency);
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null || !authorization.startsWith("Bearer valid-token")) {
+                exchange.sendResponseHeaders(401, -1);
+                exchange.close();
+                return;
+            }
+            if (exchange.getRequestURI().getPath().equals("/user/emails")) {
+                emailsCalls.incrementAndGet();
+                if (emailsStatus != 200) {
+                    exchange.sendResponseHeaders(emailsStatus, -1);
+                    exchange.close();
+                    return;
+                }
+                respond(exchange, "[{\"email\":\"old@example.com\",\"primary\":false,\"verified\":true},"
+                        + "{\"email\":\"primary@example.com\",\"primary\":true,\"verified\":true}]");
+                return;
+            }
+            respond(exchange, profile);
+        });
+        githubStub.start();
+
+        config = new GithubClientConfig();
+        connectionManager = config.githubConnectionManager(200, 200, Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofMinutes(5));
+        githubExecutor = config.githubExecutor();
+        oauth2Service = oauth2Service();
+    }
+
+    private OAuth2ServiceImpl oauth2Service() {
+        return new OAuth2ServiceImpl(userDetailsService, authService,
+                config.githubRestTemplate(new RestTemplateBuilder(), connectionManager,
+                        "http://localhost:" + githubStub.getAddress().getPort(), Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(30)),
+                new GithubUserCache(100, Duration.ofSeconds(30)),
+                new AuthMetrics(registry), githubExecutor, EXCHANGE_TIMEOUT, prefetchEmails);
+    }
+
+    @AfterEach
+    void tearDown() {
+        githubExecutor.close();
+        connectionManager.close();
+        githubStub.stop(0);
+    }
+
+    private void givenLocalUser() {
+        CredentialsEntity localUser = new CredentialsEntity();
+        when(userDetailsService.findOrCreateUser(any(GithubUserResponse.class))).thenReturn(localUser);
+        when(authService.startSession(localUser)).thenReturn(new AuthResponse("access-token", "refresh-token"));
+    }
+
+    @Test
+    void exchangeGithubToken_SameTokenRepeatedly_ShouldCallGithubOnce() {
+        // Given
+        givenLocalUser();
+
+        // When
+        AuthResponse first = oauth2Service.exchangeGithubToken(new TokenRequest("valid-token"));
+        AuthResponse second = oauth2Service.exchangeGithubToken(new TokenRequest("valid-token"));
+
+        // Then
+        assertEquals("access-token", first.AccessToken());
+        assertEquals("access-token", second.AccessToken());
+        assertEquals(1, githubCalls.get());
+        verify(userDetailsService, times(2)).findOrCreateUser(argThat(user -> "octocat".equals(user.getLogin())));
+    }
+
+    @Test
+    void exchangeGithubToken_WithRejectedToken_ShouldReturnNullAndNotCacheIt() {
+        // When
+        AuthResponse first = oauth2Service.exchangeGithubToken(new TokenRequest("invalid-token"));
+        AuthResponse second = oauth2Service.exchangeGithubToken(new TokenRequest("invalid-token"));
+
+        // Then
+        assertNull(first);
+        assertNull(second);
+        assertEquals(2, githubCalls.get());
+        verifyNoInteractions(userDetailsService, authService);
+        assertEquals(2, registry.get("auth.github.exchange").tag("outcome", "rejected").timer().count());
+    }
+
+    @Test
+    void exchangeGithubToken_WithoutPrefetchAndWithPublicEmail_ShouldNotFetchTheEmailAddresses() {
+        // Given
+        givenLocalUser();
+        prefetchEmails = false;
+        oauth2Service = oauth2Service();
+
+        // When
+        oauth2Service.exchangeGithubToken(new TokenRequest("valid-token"));
+
+        // Then
+        assertEquals(0, emailsCalls.get());
+        verify(userDetailsService).findOrCreateUser(argThat(user -> "octocat@example.com".equals(user.getEmail())));
+    }
+
+    @Test
+    void exchangeGithubToken_WithoutPublicEmail_ShouldFetchTheProfileAndTheEmailAddressesConcurrently() {
+        // Given
+        givenLocalUser();
+        profile = "{\"id\":1,\"login\":\"octocat\",\"email\":null,\"name\":\"Octocat\"}";
+        latency = Duration.ofMillis(500);
+        long start = System.nanoTime();
+
+        // When
+        oauth2Service.exchangeGithubToken(new TokenRequest("valid-token"));
+
+        // Then
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertEquals(1, emailsCalls.get());
+        // One after the other the calls would take twice the latency
+        assertTrue(elapsed.compareTo(latency.multipliedBy(2)) < 0, "took " + elapsed);
+        verify(userDetailsService).findOrCreateUser(argThat(user -> "primary@example.com".equals(user.getEmail())));
+    }
+
+    @Test
+    void exchangeGithubToken_WithoutPublicEmail_ShouldUseThePrimaryVerifiedEmail() {
+        // Given
+        givenLocalUser();
+        profile = "{\"id\":1,\"login\":\"octocat\",\"email\":null,\"name\":\"Octocat\"}";
+
+        // When
+        oauth2Service.exchangeGithubToken(new TokenRequest("valid-token"));
+
+        // Then
+        verify(userDetailsService).findOrCreateUser(argThat(user -> "primary@example.com".equals(user.getEmail())));
+    }
+
+    @Test
+    void exchangeGithubToken_WithoutEmailScope_ShouldStillExchange() {
+        // Given
+        givenLocalUser();
+        profile = "{\"id\":1,\"login\":\"octocat\",\"email\":null,\"name\":\"Octocat\"}";
+        emailsStatus = 404;
+
+        // When
+        AuthResponse response = oauth2Service.exchangeGithubToken(new TokenRequest("valid-token"));
+
+        // Then
+        assertEquals("access-token", response.AccessToken());
+        verify(userDetailsService).findOrCreateUser(argThat(user -> user.getEmail() == null));
+    }
+
+    @Test
+    void exchangeGithubToken_WithGithubPastTheDeadline_ShouldFailWithinTheDeadline() {
+        // Given
+        latency = EXCHANGE_TIMEOUT.multipliedBy(3);
+        long start = System.nanoTime();
+
+        // When
+        ResourceAccessException exception = assertThrows(ResourceAccessException.class,
+                () -> oauth2Service.exchangeGithubToken(new TokenRequest("valid-token")));
+
+        // Then
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertInstanceOf(SocketTimeoutException.class, exception.getCause());
+        assertTrue(elapsed.compareTo(EXCHANGE_TIMEOUT.multipliedBy(2)) < 0, "took " + elapsed);
+        assertEquals(1, registry.get("auth.github.exchange").tag("outcome", "unavailable").timer().count());
+    }
+
+    @Test
+    void exchangeGithubTokenAsync_ShouldRunTheExchangesConcurrentlyOnVirtualThreads() throws Exception {
+        // Given
+        givenLocalUser();
+        latency = Duration.ofMillis(300);
+        int exchanges = 20;
+
+        // When
+        long start = System.nanoTime();
+        List<CompletableFuture<AuthResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < exchanges; i++) {
+            // A distinct token each, so every exchange calls GitHub
+            responses.add(oauth2Service.exchangeGithubTokenAsync(new TokenRequest("valid-token-" + i)));
+        }
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        // Then
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        for (CompletableFuture<AuthResponse> response : responses) {
+            assertEquals("access-token", response.join().AccessToken());
+        }
+        assertEquals(exchanges, githubCalls.get());
+        // One after the other they would take exchanges * latency
+        assertTrue(elapsed.compareTo(latency.multipliedBy(exchanges / 4)) < 0, "took " + elapsed);
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eduardomango.authmicroservice.exceptions.PasswordHashingUnavailableException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AuthMetrics metrics = new AuthMetrics(registry);
+
+    @Test
+    void constructor_ShouldRegisterTheSuccessTimerOfEveryStage() {
+        // Then
+        for (AuthMetrics.Stage stage : AuthMetrics.Stage.values()) {
+            assertEquals(0, registry.get(stage.metricName()).tag("outcome", "success").timer().count());
+        }
+    }
+
+    @Test
+    void time_ShouldRecordTheCallWithItsPercentiles() {
+        // When
+        String result = metrics.time(AuthMetrics.Stage.TOKEN_SIGN, () -> "token");
+
+        // Then
+        assertEquals("token", result);
+        Timer timer = registry.get("auth.token.sign").tag("outcome", "success").timer();
+        assertEquals(1, timer.count());
+        assertEquals(3, timer.takeSnapshot().percentileValues().length);
+    }
+
+    @Test
+    void time_WithFailingCall_ShouldRecordTheOutcomeAndRethrow() {
+        // When
+        assertThrows(BadCredentialsException.class, () -> metrics.time(AuthMetrics.Stage.PASSWORD_VERIFY, () -> {
+            throw new BadCredentialsException("Bad credentials");
+        }));
+
+        // Then
+        assertEquals(1, registry.get("auth.password.verify").tag("outcome", "rejected").timer().count());
+        assertEquals(0, registry.get("auth.password.verify").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void timeLookup_WithNothingFound_ShouldRecordNotFound() {
+        // When
+        Optional<String> user = metrics.timeLookup(AuthMetrics.Stage.USER_LOAD, Optional::empty);
+
+        // Then
+        assertTrue(user.isEmpty());
+        assertEquals(1, registry.get("auth.user.load").tag("outcome", "not_found").timer().count());
+    }
+
+    @Test
+    void record_ShouldReuseTheTimerOfAnOutcome() {
+        // When
+        metrics.record(AuthMetrics.Stage.GITHUB_EXCHANGE, "unavailable", System.nanoTime() - Duration.ofMillis(5).toNanos());
+        metrics.record(AuthMetrics.Stage.GITHUB_EXCHANGE, "unavailable", System.nanoTime());
+
+        // Then
+        assertEquals(2, registry.find("auth.github.exchange").timers().size());
+        assertEquals(2, registry.get("auth.github.exchange").tag("outcome", "unavailable").timer().count());
+    }
+
+    @Test
+    void outcome_ShouldClassifyTheFailuresOfThePipeline() {
+        // Then
+        assertEquals("expired", AuthMetrics.outcome(new ExpiredJwtException(null, null, "expired")));
+        assertEquals("invalid", AuthMetrics.outcome(new MalformedJwtException("malformed")));
+        assertEquals("rejected", AuthMetrics.outcome(new IllegalArgumentException("Refresh token does not match")));
+        assertEquals("unavailable", AuthMetrics.outcome(new PasswordHashingUnavailableException("busy", Duration.ofSeconds(1))));
+        assertEquals("unavailable", AuthMetrics.outcome(new ResourceAccessException("timeout")));
+        assertEquals("error", AuthMetrics.outcome(new IllegalStateException("unexpected")));
+    }
+}
@@ -1,25 +1,41 @@
 package org.eduardomango.authmicroservice.services.impl;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.eduardomango.authmicroservice.exceptions.InvalidParametersException;
 import org.eduardomango.authmicroservice.exceptions.InvalidPasswordException;
 import org.eduardomango.authmicroservice.exceptions.InvalidUsernameException;
+import org.eduardomango.authmicroservice.exceptions.PasswordHashingUnavailableException;
 import org.eduardomango.authmicroservice.exceptions.UserNotFoundException;
 import org.eduardomango.authmicroservice.models.CredentialsEntity;
 import org.eduardomango.authmicroservice.models.auth.AuthRequest;
+import org.eduardomango.authmicroservice.models.auth.AuthResponse;
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.eduardomango.authmicroservice.models.auth.RefreshCredentials;
+import org.eduardomango.authmicroservice.models.auth.VerifiedToken;
 import org.eduardomango.authmicroservice.repositories.CredentialsRepository;
+import org.eduardomango.authmicroservice.services.interfaces.RefreshTokenService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,6 +53,19 @@ class AuthServiceImplTest {
     private CredentialsRepository credentialsRepository;
     @Mock
     private PasswordEncoder passwordEncoder;
+    @Mock
+    private JwtServiceImpl tokenProvider;
+    @Mock
+    private RefreshTokenService refreshTokenService;
+    @Spy
+    private RefreshCoalescer refreshCoalescer = new RefreshCoalescer(Duration.ofSeconds(10));
+    @Mock
+    private InvalidationBus invalidationBus;
+    @Spy
+    private AuthorityResolver authorityResolver = new AuthorityResolver();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    @Spy
+    private AuthMetrics metrics = new AuthMetrics(registry);
 
     private AuthRequest validAuthRequest;
     private CredentialsEntity validCredentials;
@@ -57,7 +86,7 @@ class AuthServiceImplTest {
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(new UsernamePasswordAuthenticationToken(validAuthRequest.username(), validAuthRequest.password()));
 
-        when(credentialsRepository.findByUsername(validAuthRequest.username()))
+        when(credentialsRepository.findWithAuthoritiesByUsername(validAuthRequest.username()))
                 .thenReturn(Optional.of(validCredentials));
 
         // When
@@ -67,7 +96,8 @@ class AuthServiceImplTest {
         assertNotNull(result);
         assertEquals(validCredentials.getUsername(), result.getUsername());
         verify(authenticationManager).authenticate(any(UsernamePasswordAuthenticationToken.class));
-        verify(credentialsRepository).findByUsername(validAuthRequest.username());
+        verify(credentialsRepository).findWithAuthoritiesByUsername(validAuthRequest.username());
+        assertEquals(1, registry.get("auth.password.verify").tag("outcome", "success").timer().count());
     }
 
     @Test
@@ -82,7 +112,8 @@ class AuthServiceImplTest {
         });
 
         verify(authenticationManager).authenticate(any(UsernamePasswordAuthenticationToken.class));
-        verify(credentialsRepository, never()).findByUsername(any());
+        verify(credentialsRepository, never()).findWithAuthoritiesByUsername(any());
+        assertEquals(1, registry.get("auth.password.verify").tag("outcome", "rejected").timer().count());
     }
 
     @Test
@@ -91,7 +122,7 @@ class AuthServiceImplTest {
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(new UsernamePasswordAuthenticationToken(validAuthRequest.username(), validAuthRequest.password()));
 
-        when(credentialsRepository.findByUsername(validAuthRequest.username()))
+        when(credentialsRepository.findWithAuthoritiesByUsername(validAuthRequest.username()))
                 .thenReturn(Optional.empty());
 
         // When/Then
@@ -100,7 +131,42 @@ class AuthServiceImplTest {
         });
 
         verify(authenticationManager).authenticate(any(UsernamePasswordAuthenticationToken.class));
-        verify(credentialsRepository).findByUsername(validAuthRequest.username());
+        verify(credentialsRepository).findWithAuthoritiesByUsername(validAuthRequest.username());
+        assertEquals(1, registry.get("auth.user.load").tag("outcome", "not_found").timer().count());
+    }
+
+    @Test
+    void authenticate_WithUnknownUserAndSaturatedHashingPool_ShouldThrowPasswordHashingUnavailableException() {
+        // Given the provider of SecurityConfig, whose timing attack mitigation hashes a password for unknown users
+        PasswordEncoder saturatedEncoder = mock(PasswordEncoder.class);
+        when(saturatedEncoder.encode(any())).thenReturn("hash");
+        when(saturatedEncoder.matches(any(), any()))
+                .thenThrow(new PasswordHashingUnavailableException("Too many password requests", Duration.ofSeconds(1)));
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(saturatedEncoder);
+        provider.setUserDetailsService(username -> {
+            throw new UsernameNotFoundException(username);
+        });
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenAnswer(invocation -> new ProviderManager(provider).authenticate(invocation.getArgument(0)));
+
+        // When/Then
+        assertThrows(PasswordHashingUnavailableException.class, () -> authService.authenticate(validAuthRequest));
+        verify(credentialsRepository, never()).findWithAuthoritiesByUsername(any());
+        assertEquals(1, registry.get("auth.password.verify").tag("outcome", "unavailable").timer().count());
+    }
+
+    @Test
+    void authenticate_WithHashingUnavailableWrappedByTheProvider_ShouldUnwrapIt() {
+        // Given
+        PasswordHashingUnavailableException unavailable =
+                new PasswordHashingUnavailableException("Too many password requests", Duration.ofSeconds(1));
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenThrow(new InternalAuthenticationServiceException(unavailable.getMessage(), unavailable));
+
+        // When/Then
+        assertSame(unavailable, assertThrows(PasswordHashingUnavailableException.class,
+                () -> authService.authenticate(validAuthRequest)));
+        assertEquals(1, registry.get("auth.password.verify").tag("outcome", "unavailable").timer().count());
     }
 
     @Test
@@ -111,7 +177,119 @@ class AuthServiceImplTest {
         });
 
         verify(authenticationManager, never()).authenticate(any());
-        verify(credentialsRepository, never()).findByUsername(any());
+        verify(credentialsRepository, never()).findWithAuthoritiesByUsername(any());
+    }
+
+    @Test
+    void refreshAccessToken_WithStoredToken_ShouldRotateIt() {
+        // Given
+        RefreshCredentials stored = new RefreshCredentials(7L, 1L, UUID.randomUUID(), Instant.now().plusSeconds(60), null, 0);
+        when(refreshTokenService.find("refresh-token")).thenReturn(Optional.of(stored));
+        when(credentialsRepository.findWithAuthoritiesById(1L)).thenReturn(Optional.of(validCredentials));
+        when(refreshTokenService.isValid("refresh-token", validCredentials)).thenReturn(true);
+        when(tokenProvider.generateToken(validCredentials)).thenReturn("access-token");
+        when(refreshTokenService.rotate("refresh-token", stored, validCredentials)).thenReturn("new-refresh-token");
+
+        // When
+        AuthResponse response = authService.refreshAccessToken("refresh-token");
+
+        // Then
+        assertEquals("access-token", response.AccessToken());
+        assertEquals("new-refresh-token", response.refreshToken());
+    }
+
+    @Test
+    void refreshAccessToken_WithSameTokenAgain_ShouldReturnTheSamePairWithoutRotatingAgain() {
+        // Given
+        RefreshCredentials stored = new RefreshCredentials(7L, 1L, UUID.randomUUID(), Instant.now().plusSeconds(60), null, 0);
+        when(refreshTokenService.find("refresh-token")).thenReturn(Optional.of(stored));
+        when(credentialsRepository.findWithAuthoritiesById(1L)).thenReturn(Optional.of(validCredentials));
+        when(refreshTokenService.isValid("refresh-token", validCredentials)).thenReturn(true);
+        when(tokenProvider.generateToken(validCredentials)).thenReturn("access-token");
+        when(refreshTokenService.rotate("refresh-token", stored, validCredentials)).thenReturn("new-refresh-token");
+
+        // When
+        AuthResponse first = authService.refreshAccessToken("refresh-token");
+        AuthResponse second = authService.refreshAccessToken("refresh-token");
+
+        // Then
+        assertEquals(first, second);
+        verify(refreshTokenService, times(1)).rotate("refresh-token", stored, validCredentials);
+        verify(tokenProvider, times(1)).generateToken(validCredentials);
+        assertEquals(1, registry.get("auth.refresh.rotate").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void refreshAccessToken_WithUnknownToken_ShouldThrowWithoutLoadingTheUser() {
+        // Given
+        when(refreshTokenService.find("unknown")).thenReturn(Optional.empty());
+
+        // When/Then
+        assertThrows(IllegalArgumentException.class, () -> authService.refreshAccessToken("unknown"));
+        verify(credentialsRepository, never()).findWithAuthoritiesById(any());
+        verify(refreshTokenService, never()).rotate(any(), any(), any());
+        assertEquals(1, registry.get("auth.refresh.rotate").tag("outcome", "rejected").timer().count());
+    }
+
+    @Test
+    void startSession_ShouldIssueTheAccessAndRefreshTokens() {
+        // Given
+        when(tokenProvider.generateToken(validCredentials)).thenReturn("access-token");
+        when(refreshTokenService.issue(validCredentials)).thenReturn("refresh-token");
+
+        // When
+        AuthResponse response = authService.startSession(validCredentials);
+
+        // Then
+        assertEquals("access-token", response.AccessToken());
+        assertEquals("refresh-token", response.refreshToken());
+        verifyNoInteractions(invalidationBus);
+    }
+
+    @Test
+    void logout_ShouldRevokeTheAccessTokenAndTheRefreshSession() {
+        // Given
+        VerifiedToken token = new VerifiedToken("testuser", UUID.randomUUID(), Instant.now(),
+                Instant.now().plusSeconds(60), List.of(), 0);
+        when(tokenProvider.verify("access-token")).thenReturn(token);
+
+        // When
+        authService.logout("access-token", "refresh-token");
+
+        // Then
+        verify(invalidationBus).publish(InvalidationEvent.token(token));
+        verify(refreshTokenService).revoke("refresh-token");
+    }
+
+    @Test
+    void revokeSessions_ShouldRevokeEveryTokenOfTheUser() {
+        // Given
+        validCredentials.setId(1L);
+        when(credentialsRepository.findById(1L)).thenReturn(Optional.of(validCredentials));
+
+        // When
+        authService.revokeSessions(1L);
+
+        // Then
+        verify(invalidationBus).publish(argThat(event ->
+                event.type() == InvalidationEvent.Type.SUBJECT && event.key().equals("testuser")));
+        verify(refreshTokenService).revokeAll(1L);
+    }
+
+    @Test
+    void updateCredentials_ShouldRevokeTheTokensIssuedToThePreviousUsername() {
+        // Given
+        validCredentials.setId(1L);
+        when(passwordEncoder.encode(anyString())).thenReturn("encodedPassword");
+        when(credentialsRepository.findById(1L)).thenReturn(Optional.of(validCredentials));
+
+        // When
+        authService.updateCredentials(1L, new AuthRequest("newusername", "newpassword"));
+
+        // Then
+        verify(invalidationBus).publish(argThat(event ->
+                event.type() == InvalidationEvent.Type.SUBJECT && event.key().equals("testuser")));
+        verify(refreshTokenService).revokeAll(1L);
     }
 
     @Test
@@ -0,0 +1,101 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import org.eduardomango.authmicroservice.models.Authorities;
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.Enum.UserPermit;
+import org.eduardomango.authmicroservice.models.Enum.UserProfile;
+import org.eduardomango.authmicroservice.models.Enum.UserRole;
+import org.eduardomango.authmicroservice.models.PermitEntity;
+import org.eduardomango.authmicroservice.models.ProfileEntity;
+import org.eduardomango.authmicroservice.models.RoleEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthorityResolverTest {
+
+    private final AuthorityResolver authorityResolver = new AuthorityResolver();
+    private ProfileEntity customerProfile;
+    private RoleEntity moderatorRole;
+
+    @BeforeEach
+    void setUp() {
+        RoleEntity customerRole = new RoleEntity(UserRole.ROLE_CUSTOMER);
+        customerRole.addPermit(new PermitEntity(1L, UserPermit.PRODUCT_READ, "Read products"));
+        customerRole.addPermit(new PermitEntity(2L, UserPermit.ORDER_CREATE, "Create orders"));
+        customerProfile = new ProfileEntity(UserProfile.CUSTOMER);
+        customerProfile.addRole(customerRole);
+
+        moderatorRole = new RoleEntity(UserRole.ROLE_CONTENT_MODERATOR);
+        moderatorRole.addPermit(new PermitEntity(3L, UserPermit.REVIEW_MODERATE, "Moderate reviews"));
+        moderatorRole.addPermit(new PermitEntity(1L, UserPermit.PRODUCT_READ, "Read products"));
+    }
+
+    private static List<String> names(List<GrantedAuthority> authorities) {
+        return authorities.stream().map(GrantedAuthority::getAuthority).toList();
+    }
+
+    @Test
+    void resolve_ShouldIncludeProfileRolesDirectRolesAndTheirPermits() {
+        // When
+        List<GrantedAuthority> authorities = authorityResolver.resolve(customerProfile, Set.of(moderatorRole));
+
+        // Then
+        assertEquals(List.of("ROLE_CUSTOMER", "ROLE_CONTENT_MODERATOR",
+                "product:read", "order:create", "review:moderate"), names(authorities));
+    }
+
+    @Test
+    void resolve_ShouldShareAuthoritiesBetweenUsersWithTheSameRoles() {
+        // When
+        List<GrantedAuthority> first = authorityResolver.resolve(customerProfile, Set.of());
+        List<GrantedAuthority> second = authorityResolver.resolve(customerProfile, Set.of());
+
+        // Then
+        assertSame(first, second);
+        assertSame(Authorities.authority("ROLE_CUSTOMER"), first.get(0));
+        assertThrows(UnsupportedOperationException.class, () -> first.add(Authorities.authority("ROLE_ADMIN")));
+    }
+
+    @Test
+    void resolve_AfterInvalidation_ShouldReflectNewPermits() {
+        // Given
+        authorityResolver.resolve(customerProfile, Set.of());
+        customerProfile.getRoles().iterator().next()
+                .addPermit(new PermitEntity(4L, UserPermit.ORDER_READ, "Read orders"));
+
+        // When
+        authorityResolver.invalidate();
+        List<GrantedAuthority> authorities = authorityResolver.resolve(customerProfile, Set.of());
+
+        // Then
+        assertTrue(names(authorities).contains("order:read"));
+    }
+
+    @Test
+    void withAuthorities_ShouldSetTheSharedAuthoritiesOnTheUser() {
+        // Given
+        CredentialsEntity user = new CredentialsEntity();
+        user.setProfile(customerProfile);
+
+        // When
+        authorityResolver.withAuthorities(user);
+
+        // Then
+        assertSame(authorityResolver.resolve(customerProfile, Set.of()), user.getAuthorities());
+    }
+
+    @Test
+    void resolve_WithoutProfile_ShouldResolveDirectRoles() {
+        // When
+        List<GrantedAuthority> authorities = authorityResolver.resolve(null, Set.of(moderatorRole));
+
+        // Then
+        assertEquals(List.of("ROLE_CONTENT_MODERATOR", "product:read", "review:moderate"), names(authorities));
+    }
+}
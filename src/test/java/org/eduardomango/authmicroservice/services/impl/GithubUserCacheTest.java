@@ -0,0 +1,105 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import org.eduardomango.authmicroservice.models.auth.GithubUserResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GithubUserCacheTest {
+
+    private final GithubUserCache githubUserCache = new GithubUserCache(100, Duration.ofSeconds(30));
+
+    @Test
+    void get_WithConcurrentExchangesOfSameToken_ShouldCallGithubOnce() throws Exception {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch calling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<GithubUserResponse>> users = new ArrayList<>();
+        users.add(executor.submit(() -> githubUserCache.get("github-token", () -> {
+            calling.countDown();
+            await(release);
+            return user("octocat-" + calls.incrementAndGet());
+        })));
+        assertTrue(calling.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 7; i++) {
+            users.add(executor.submit(() -> githubUserCache.get("github-token",
+                    () -> user("octocat-" + calls.incrementAndGet()))));
+        }
+        release.countDown();
+
+        // Then
+        for (Future<GithubUserResponse> user : users) {
+            assertEquals("octocat-1", user.get(5, TimeUnit.SECONDS).getLogin());
+        }
+        assertEquals(1, calls.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void get_WithinTtl_ShouldServeTheCachedUser() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        githubUserCache.get("github-token", () -> user("octocat-" + calls.incrementAndGet()));
+
+        // When
+        GithubUserResponse user = githubUserCache.get("github-token", () -> user("octocat-" + calls.incrementAndGet()));
+
+        // Then
+        assertEquals("octocat-1", user.getLogin());
+        assertEquals(1, githubUserCache.stats().hitCount());
+    }
+
+    @Test
+    void get_AfterFailure_ShouldCallGithubAgain() {
+        // Given
+        assertThrows(IllegalStateException.class, () -> githubUserCache.get("github-token", () -> {
+            throw new IllegalStateException("401 Unauthorized");
+        }));
+
+        // When
+        GithubUserResponse user = githubUserCache.get("github-token", () -> user("octocat"));
+
+        // Then
+        assertEquals("octocat", user.getLogin());
+    }
+
+    @Test
+    void get_WhenDisabled_ShouldCallGithubEveryTime() {
+        // Given
+        GithubUserCache disabled = new GithubUserCache(0, Duration.ofSeconds(30));
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        disabled.get("github-token", () -> user("octocat-" + calls.incrementAndGet()));
+        GithubUserResponse user = disabled.get("github-token", () -> user("octocat-" + calls.incrementAndGet()));
+
+        // Then
+        assertEquals("octocat-2", user.getLogin());
+    }
+
+    private static GithubUserResponse user(String login) {
+        return new GithubUserResponse(1, login, login + "@example.com", login);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
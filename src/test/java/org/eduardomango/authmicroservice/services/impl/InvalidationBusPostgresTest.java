@@ -0,0 +1,110 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.eduardomango.authmicroservice.repositories.InvalidationEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two nodes sharing a local Postgres, each one with its own bus. Skipped without Docker.
+ */
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class InvalidationBusPostgresTest {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(200);
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(2);
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private InvalidationEventRepository repository;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private JdbcConnectionDetails connectionDetails;
+
+    private final List<InvalidationBus> nodes = new ArrayList<>();
+
+    private InvalidationBus node(List<Object> applied, boolean listen) {
+        InvalidationBus bus = new InvalidationBus(repository, new JdbcTemplate(dataSource), connectionDetails, applied::add,
+                new SimpleMeterRegistry(), true, "auth_invalidation", POLL_TIMEOUT, RECONNECT_DELAY,
+                Duration.ofSeconds(10), 60_000L);
+        if (listen) {
+            bus.start();
+            await().atMost(Duration.ofSeconds(5)).until(bus::isListening);
+        }
+        nodes.add(bus);
+        return bus;
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(InvalidationBus::stop);
+        repository.deleteAll();
+    }
+
+    @Test
+    void publish_ShouldReachTheOtherNodesWithinThePollTimeout() {
+        // Given
+        List<Object> appliedOnA = new CopyOnWriteArrayList<>();
+        List<Object> appliedOnB = new CopyOnWriteArrayList<>();
+        InvalidationBus nodeA = node(appliedOnA, true);
+        node(appliedOnB, true);
+        InvalidationEvent event = InvalidationEvent.subject("testuser", Instant.now().truncatedTo(ChronoUnit.SECONDS));
+
+        // When
+        nodeA.publish(event);
+
+        // Then
+        assertTrue(appliedOnA.contains(event));
+        await().atMost(POLL_TIMEOUT.multipliedBy(5)).until(() -> appliedOnB.contains(event));
+    }
+
+    @Test
+    void listener_ShouldReplayTheEventsMissedWhileDisconnected() {
+        // Given
+        List<Object> appliedOnB = new CopyOnWriteArrayList<>();
+        InvalidationBus nodeA = node(new CopyOnWriteArrayList<>(), false);
+        InvalidationBus nodeB = node(appliedOnB, true);
+        new JdbcTemplate(dataSource).queryForList(
+                "select pg_terminate_backend(pid) from pg_stat_activity where query = 'LISTEN auth_invalidation'");
+        await().atMost(Duration.ofSeconds(5)).until(() -> !nodeB.isListening());
+        InvalidationEvent event = new InvalidationEvent(InvalidationEvent.Type.REFERENCE_DATA, null,
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+
+        // When
+        nodeA.publish(event);
+
+        // Then
+        await().atMost(RECONNECT_DELAY.multipliedBy(3)).until(nodeB::isListening);
+        assertTrue(appliedOnB.contains(event));
+    }
+}
@@ -0,0 +1,170 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eduardomango.authmicroservice.models.InvalidationEventEntity;
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.eduardomango.authmicroservice.repositories.InvalidationEventRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InvalidationBusTest {
+
+    @Mock
+    private InvalidationEventRepository repository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private JdbcConnectionDetails connectionDetails;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private InvalidationBus bus(boolean enabled) {
+        return new InvalidationBus(repository, jdbcTemplate, connectionDetails, eventPublisher, new SimpleMeterRegistry(),
+                enabled, "auth_invalidation", Duration.ofMillis(500), Duration.ofSeconds(5), Duration.ofSeconds(10),
+                60_000L);
+    }
+
+    @Test
+    void publish_ShouldApplyLocallyStoreAndNotify() {
+        // Given
+        InvalidationEvent event = InvalidationEvent.subject("testuser", Instant.now().truncatedTo(ChronoUnit.SECONDS));
+
+        // When
+        bus(true).publish(event);
+
+        // Then
+        verify(eventPublisher).publishEvent(event);
+        verify(repository).save(argThat(stored -> stored.toEvent().equals(event)));
+        verify(jdbcTemplate).queryForList(eq("select pg_notify(?, ?)"), eq("auth_invalidation"),
+                argThat(payload -> ((String) payload).startsWith("SUBJECT ") && ((String) payload).endsWith(" testuser")));
+    }
+
+    @Test
+    void publish_ReferenceDataInATransaction_ShouldApplyLocallyOnlyAfterTheCommit() {
+        // Given
+        InvalidationEvent event = InvalidationEvent.referenceData();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // When
+            bus(true).publish(event);
+
+            // Then
+            verify(eventPublisher, never()).publishEvent(any());
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(eventPublisher).publishEvent(event);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void publish_RevocationInATransactionThatFails_ShouldStillApplyLocally() {
+        // Given
+        InvalidationEvent event = InvalidationEvent.subject("testuser", Instant.now());
+        when(repository.save(any())).thenThrow(new IllegalStateException("database down"));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // When
+            assertThrows(IllegalStateException.class, () -> bus(true).publish(event));
+
+            // Then
+            verify(eventPublisher).publishEvent(event);
+            assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void publish_WhenDisabled_ShouldOnlyApplyLocally() {
+        // Given
+        InvalidationEvent event = InvalidationEvent.referenceData();
+
+        // When
+        bus(false).publish(event);
+
+        // Then
+        verify(eventPublisher).publishEvent(event);
+        verifyNoInteractions(repository, jdbcTemplate);
+    }
+
+    @Test
+    void receive_ShouldApplyTheEncodedEvent() {
+        // Given
+        InvalidationEvent token = new InvalidationEvent(InvalidationEvent.Type.TOKEN, UUID.randomUUID().toString(),
+                Instant.now().plusSeconds(60).truncatedTo(ChronoUnit.MILLIS));
+        InvalidationEvent subject = InvalidationEvent.subject("user with spaces",
+                Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        InvalidationEvent referenceData = new InvalidationEvent(InvalidationEvent.Type.REFERENCE_DATA, null,
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+        InvalidationBus bus = bus(true);
+
+        // When
+        for (InvalidationEvent event : List.of(token, subject, referenceData)) {
+            bus.receive(InvalidationBus.encode(event, Instant.now()));
+        }
+
+        // Then
+        verify(eventPublisher).publishEvent(token);
+        verify(eventPublisher).publishEvent(subject);
+        verify(eventPublisher).publishEvent(referenceData);
+    }
+
+    @Test
+    void receive_WithMalformedPayload_ShouldIgnoreIt() {
+        // Given
+        InvalidationBus bus = bus(true);
+
+        // When
+        bus.receive("UNKNOWN 1 2 key");
+        bus.receive("TOKEN not-a-time");
+
+        // Then
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void replay_ShouldApplyTheStoredEventsInOrder() {
+        // Given
+        Instant from = Instant.now().minusSeconds(30);
+        InvalidationEvent first = InvalidationEvent.subject("testuser", Instant.now());
+        InvalidationEvent second = InvalidationEvent.referenceData();
+        when(repository.findByCreatedAtGreaterThanEqualOrderByIdAsc(from)).thenReturn(List.of(
+                InvalidationEventEntity.builder().id(1L).type(first.type()).key(first.key()).at(first.at()).build(),
+                InvalidationEventEntity.builder().id(2L).type(second.type()).at(second.at()).build()));
+
+        // When
+        bus(true).replay(from);
+
+        // Then
+        var inOrder = inOrder(eventPublisher);
+        inOrder.verify(eventPublisher).publishEvent(first);
+        inOrder.verify(eventPublisher).publishEvent(second);
+    }
+
+    @Test
+    void constructor_WithInvalidChannel_ShouldThrow() {
+        // When/Then
+        assertThrows(IllegalArgumentException.class, () -> new InvalidationBus(repository, jdbcTemplate, connectionDetails,
+                eventPublisher, new SimpleMeterRegistry(), true, "auth; drop table", Duration.ofMillis(500),
+                Duration.ofSeconds(5), Duration.ofSeconds(10), 60_000L));
+    }
+}
@@ -1,16 +1,38 @@
 package org.eduardomango.authmicroservice.services.impl;
 
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.eduardomango.authmicroservice.config.JwtKey;
+import org.eduardomango.authmicroservice.config.JwtKeyProvider;
+import org.eduardomango.authmicroservice.config.JwtKeysRotatedEvent;
+import org.eduardomango.authmicroservice.models.Enum.UserPermit;
+import org.eduardomango.authmicroservice.models.auth.JwtPrincipal;
+import org.eduardomango.authmicroservice.models.auth.VerifiedToken;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Collections;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
@@ -20,15 +42,25 @@ import static org.mockito.Mockito.when;
 class JwtServiceImplTest {
 
 
-    @InjectMocks
     private JwtServiceImpl jwtService;
+    private VerifiedTokenCache tokenCache;
 
     private UserDetails userDetails;
-    private static final String SECRET_KEY = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+    private static KeyPair keyPair;
     private static final Long EXPIRATION = 86400000L; // 1 día en millisegundos
 
+    @BeforeAll
+    static void generateKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+    }
+
     @BeforeEach
     void setUp() {
+        tokenCache = new VerifiedTokenCache(100, Duration.ofMinutes(5));
+        jwtService = jwtService(new JwtKeyProvider(keyPair.getPrivate(), keyPair.getPublic()), tokenCache);
+
         // Configurar el userDetails de prueba
         userDetails = new User(
                 "test@example.com",
@@ -39,10 +71,184 @@ class JwtServiceImplTest {
                 true,
                 Collections.singleton(new SimpleGrantedAuthority("ROLE_USER"))
         );
+    }
+
+    private JwtServiceImpl jwtService(JwtKeyProvider keyProvider, VerifiedTokenCache cache) {
+        JwtServiceImpl service = new JwtServiceImpl(keyProvider, cache, new AuthMetrics(new SimpleMeterRegistry()));
 
         // Inyectar valores usando ReflectionTestUtils
-        ReflectionTestUtils.setField(jwtService, "jwtSecretKey", SECRET_KEY);
-        ReflectionTestUtils.setField(jwtService, "jwtExpiration", EXPIRATION);
+        ReflectionTestUtils.setField(service, "jwtExpiration", EXPIRATION);
+        ReflectionTestUtils.setField(service, "refreshTokenExpiration", EXPIRATION);
+        return service;
+    }
+
+    @Test
+    void verify_ShouldReturnSubjectExpirationAndRoles() {
+        // Given
+        String token = jwtService.generateToken(userDetails);
+
+        // When
+        VerifiedToken verified = jwtService.verify(token);
+
+        // Then
+        assertEquals(userDetails.getUsername(), verified.subject());
+        assertEquals(List.of("ROLE_USER"), verified.roles());
+        assertFalse(verified.isExpired());
+        assertTrue(jwtService.isTokenValid(verified, userDetails));
+    }
+
+    @Test
+    void verify_ShouldReadTheIssueTimeToTheMillisecond() {
+        // Given
+        Instant before = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        String token = jwtService.generateToken(userDetails);
+        TokenRevocationIndex revocationIndex = new TokenRevocationIndex(EXPIRATION, Duration.ofSeconds(1));
+        revocationIndex.revokeSubject(userDetails.getUsername(), before.minusMillis(1));
+
+        // When
+        VerifiedToken verified = jwtService.verify(token);
+
+        // Then
+        assertFalse(verified.issuedAt().isBefore(before));
+        assertFalse(verified.issuedAt().isAfter(Instant.now()));
+        // A token issued a millisecond after a revocation of its user is not revoked, even in the same second
+        assertFalse(revocationIndex.isRevoked(verified));
+    }
+
+    @Test
+    void verify_ShouldCarryPermitsAsAMask() {
+        // Given
+        UserDetails customer = User.withUsername("customer").password("password")
+                .authorities("ROLE_CUSTOMER", "product:read", "order:create").build();
+
+        // When
+        VerifiedToken verified = jwtService.verify(jwtService.generateToken(customer));
+        JwtPrincipal principal = JwtPrincipal.fromToken(verified);
+
+        // Then
+        assertEquals(List.of("ROLE_CUSTOMER"), verified.roles());
+        assertEquals(UserPermit.PRODUCT_READ.mask() | UserPermit.ORDER_CREATE.mask(), verified.permits());
+        assertTrue(principal.hasPermit(UserPermit.PRODUCT_READ));
+        assertFalse(principal.hasPermit(UserPermit.USER_DELETE));
+        assertEquals(List.of("ROLE_CUSTOMER", "product:read", "order:create"),
+                principal.authorities().stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    @Test
+    void verify_ShouldServeRepeatedTokensFromCache() {
+        // Given
+        String token = jwtService.generateToken(userDetails);
+
+        // When
+        VerifiedToken first = jwtService.verify(token);
+        VerifiedToken second = jwtService.verify(token);
+
+        // Then
+        assertSame(first, second);
+        assertEquals(1, tokenCache.stats().missCount());
+        assertEquals(1, tokenCache.stats().hitCount());
+    }
+
+    @Test
+    void verify_ShouldRecordATokenEventWithTheCacheResult() throws Exception {
+        // Given
+        String token = jwtService.generateToken(userDetails);
+        Path file = Files.createTempFile("token-events", ".jfr");
+
+        // When
+        try (Recording recording = new Recording()) {
+            recording.enable(TokenEvent.NAME);
+            recording.start();
+            jwtService.verify(token);
+            jwtService.verify(token);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        // Then
+        List<RecordedEvent> verifications = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getString("operation").equals(TokenEvent.VERIFY))
+                .toList();
+        Files.delete(file);
+        assertEquals(List.of("miss", "hit"), verifications.stream().map(event -> event.getString("tokenCache")).toList());
+        assertEquals("success", verifications.get(0).getString("outcome"));
+        assertEquals(TokenDigests.sha256Key("test@example.com"), verifications.get(0).getString("usernameHash"));
+    }
+
+    @Test
+    void verify_ShouldNotCacheTokensWithInvalidSignature() {
+        // Given
+        String token = jwtService.generateToken(userDetails);
+        String tampered = token.substring(0, token.length() - 4) + "AAAA";
+
+        // When/Then
+        assertThrows(JwtException.class, () -> jwtService.verify(tampered));
+        assertThrows(JwtException.class, () -> jwtService.verify(tampered));
+        assertEquals(2, tokenCache.stats().missCount());
+        assertEquals(0, tokenCache.stats().hitCount());
+    }
+
+    @Test
+    void verify_WithEs256SigningKey_ShouldVerifyToken() throws Exception {
+        // Given
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair ecKeyPair = generator.generateKeyPair();
+        JwtServiceImpl ecJwtService = jwtService(new JwtKeyProvider(
+                JwtKey.of(SignatureAlgorithm.ES256, ecKeyPair.getPrivate(), ecKeyPair.getPublic()), List.of()),
+                new VerifiedTokenCache(100, Duration.ofMinutes(5)));
+
+        // When
+        String token = ecJwtService.generateToken(userDetails);
+
+        // Then
+        assertEquals(userDetails.getUsername(), ecJwtService.verify(token).subject());
+        assertThrows(JwtException.class, () -> jwtService.verify(token));
+    }
+
+    @Test
+    void verify_ShouldAcceptTokensSignedWithPreviousKey() throws Exception {
+        // Given
+        String oldToken = jwtService.generateToken(userDetails);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair ecKeyPair = generator.generateKeyPair();
+        JwtServiceImpl migratedJwtService = jwtService(new JwtKeyProvider(
+                JwtKey.of(SignatureAlgorithm.ES256, ecKeyPair.getPrivate(), ecKeyPair.getPublic()),
+                List.of(JwtKey.of(SignatureAlgorithm.RS256, null, keyPair.getPublic()))),
+                new VerifiedTokenCache(100, Duration.ofMinutes(5)));
+
+        // When/Then
+        assertEquals(userDetails.getUsername(), migratedJwtService.verify(oldToken).subject());
+    }
+
+    @Test
+    void verify_AfterRotation_ShouldSignWithNewKeyAndRejectRemovedKey() throws Exception {
+        // Given
+        JwtKey oldKey = JwtKey.of(SignatureAlgorithm.RS256, keyPair.getPrivate(), keyPair.getPublic());
+        KeyPair newKeyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        JwtKey newKey = JwtKey.of(SignatureAlgorithm.RS256, newKeyPair.getPrivate(), newKeyPair.getPublic());
+        JwtKeyProvider keyProvider = new JwtKeyProvider(oldKey, List.of());
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, Duration.ofMinutes(5));
+        JwtServiceImpl rotatingJwtService = jwtService(keyProvider, cache);
+        String oldToken = rotatingJwtService.generateToken(userDetails);
+        rotatingJwtService.verify(oldToken);
+
+        // When
+        keyProvider.rotate(newKey, List.of(oldKey));
+        String newToken = rotatingJwtService.generateToken(userDetails);
+
+        // Then
+        assertEquals(userDetails.getUsername(), rotatingJwtService.verify(oldToken).subject());
+        assertEquals(userDetails.getUsername(), rotatingJwtService.verify(newToken).subject());
+
+        // When
+        keyProvider.rotate(newKey, List.of());
+        cache.onKeysRotated(new JwtKeysRotatedEvent(newKey, keyProvider.getVerificationKeys(), true));
+
+        // Then
+        assertThrows(JwtException.class, () -> rotatingJwtService.verify(oldToken));
+        assertEquals(userDetails.getUsername(), rotatingJwtService.verify(newToken).subject());
     }
 
     @Test
@@ -57,6 +263,17 @@ class JwtServiceImplTest {
         assertEquals(userDetails.getUsername(), username);
     }
 
+    @Test
+    void generateRefreshToken_ShouldDifferForTokensIssuedInTheSameSecond() {
+        // When
+        String first = jwtService.generateRefreshToken(userDetails);
+        String second = jwtService.generateRefreshToken(userDetails);
+
+        // Then
+        assertNotEquals(first, second);
+        assertTrue(jwtService.validateRefreshToken(second, userDetails));
+    }
+
     @Test
     void generateToken_ShouldGenerateValidToken() {
         // When
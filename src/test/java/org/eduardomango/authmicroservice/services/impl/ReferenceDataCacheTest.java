@@ -0,0 +1,98 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.eduardomango.authmicroservice.models.PermitEntity;
+import org.eduardomango.authmicroservice.models.ProfileEntity;
+import org.eduardomango.authmicroservice.models.RoleEntity;
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReferenceDataCacheTest {
+
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+    @Mock
+    private SessionFactory sessionFactory;
+    @Mock
+    private AuthorityResolver authorityResolver;
+
+    private ReferenceDataCache referenceDataCache;
+
+    @BeforeEach
+    void setUp() {
+        when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+        referenceDataCache = new ReferenceDataCache(entityManagerFactory, authorityResolver);
+    }
+
+    @Test
+    void invalidate_ShouldEvictEntitiesCollectionsAndQueries() {
+        // Given
+        Cache cache = mock(Cache.class);
+        when(sessionFactory.getCache()).thenReturn(cache);
+
+        // When
+        referenceDataCache.invalidate();
+
+        // Then
+        verify(cache).evictEntityData(ProfileEntity.class);
+        verify(cache).evictEntityData(RoleEntity.class);
+        verify(cache).evictEntityData(PermitEntity.class);
+        verify(cache).evictCollectionData(ProfileEntity.class.getName() + ".roles");
+        verify(cache).evictCollectionData(RoleEntity.class.getName() + ".permits");
+        verify(cache).evictDefaultQueryRegion();
+        verify(authorityResolver).invalidate();
+    }
+
+    @Test
+    void onInvalidation_ShouldInvalidateOnlyOnReferenceDataChanges() {
+        // Given
+        Cache cache = mock(Cache.class);
+        when(sessionFactory.getCache()).thenReturn(cache);
+
+        // When
+        referenceDataCache.onInvalidation(InvalidationEvent.subject("testuser", Instant.now()));
+        verify(sessionFactory, never()).getCache();
+        verify(authorityResolver, never()).invalidate();
+        referenceDataCache.onInvalidation(InvalidationEvent.referenceData());
+
+        // Then
+        verify(cache).evictDefaultQueryRegion();
+        verify(authorityResolver).invalidate();
+    }
+
+    @Test
+    void stats_ShouldReportHitRatioPerRegion() {
+        // Given
+        Statistics statistics = mock(Statistics.class);
+        CacheRegionStatistics regionStatistics = mock(CacheRegionStatistics.class);
+        when(sessionFactory.getStatistics()).thenReturn(statistics);
+        when(statistics.getSecondLevelCacheRegionNames()).thenReturn(new String[]{"profiles"});
+        when(statistics.getDomainDataRegionStatistics("profiles")).thenReturn(regionStatistics);
+        when(regionStatistics.getHitCount()).thenReturn(9L);
+        when(regionStatistics.getMissCount()).thenReturn(1L);
+
+        // When
+        Map<String, Map<String, Object>> stats = referenceDataCache.stats();
+
+        // Then
+        assertEquals(0.9, stats.get("profiles").get("hitRatio"));
+    }
+}
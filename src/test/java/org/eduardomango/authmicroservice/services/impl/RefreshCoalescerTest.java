@@ -0,0 +1,73 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import org.eduardomango.authmicroservice.models.auth.AuthResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefreshCoalescerTest {
+
+    private final RefreshCoalescer refreshCoalescer = new RefreshCoalescer(Duration.ofSeconds(10));
+
+    @Test
+    void refresh_WithConcurrentRefreshesOfSameToken_ShouldRotateOnce() throws Exception {
+        // Given
+        AtomicInteger rotations = new AtomicInteger();
+        CountDownLatch rotating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<AuthResponse>> responses = new ArrayList<>();
+        responses.add(executor.submit(() -> refreshCoalescer.refresh("refresh-token", () -> {
+            rotating.countDown();
+            await(release);
+            return new AuthResponse("access-" + rotations.incrementAndGet(), "refresh");
+        })));
+        assertTrue(rotating.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 7; i++) {
+            responses.add(executor.submit(() -> refreshCoalescer.refresh("refresh-token",
+                    () -> new AuthResponse("access-" + rotations.incrementAndGet(), "refresh"))));
+        }
+        release.countDown();
+
+        // Then
+        for (Future<AuthResponse> response : responses) {
+            assertEquals("access-1", response.get(5, TimeUnit.SECONDS).AccessToken());
+        }
+        assertEquals(1, rotations.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void refresh_AfterFailure_ShouldRunTheNextRefreshAgain() {
+        // Given
+        assertThrows(IllegalArgumentException.class, () -> refreshCoalescer.refresh("refresh-token", () -> {
+            throw new IllegalArgumentException("Refresh token does not match");
+        }));
+
+        // When
+        AuthResponse response = refreshCoalescer.refresh("refresh-token", () -> new AuthResponse("access", "refresh"));
+
+        // Then
+        assertEquals("access", response.AccessToken());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
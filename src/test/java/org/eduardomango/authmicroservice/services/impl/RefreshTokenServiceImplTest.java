@@ -0,0 +1,219 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import org.eduardomango.authmicroservice.models.CredentialsEntity;
+import org.eduardomango.authmicroservice.models.RefreshTokenEntity;
+import org.eduardomango.authmicroservice.models.auth.RefreshCredentials;
+import org.eduardomango.authmicroservice.repositories.RefreshTokenRepository;
+import org.eduardomango.authmicroservice.services.interfaces.JwtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenServiceImplTest {
+
+    private static final long EXPIRATION = 86400000L;
+    private static final Duration GRACE_PERIOD = Duration.ofSeconds(10);
+
+    @Mock
+    private RefreshTokenRepository refreshTokenRepository;
+    @Mock
+    private JwtService jwtService;
+
+    private RefreshTokenServiceImpl refreshTokenService;
+    private CredentialsEntity user;
+
+    @BeforeEach
+    void setUp() {
+        refreshTokenService = new RefreshTokenServiceImpl(refreshTokenRepository, jwtService, EXPIRATION, RefreshTokenServiceImpl.JWT, GRACE_PERIOD);
+        user = new CredentialsEntity();
+        user.setId(1L);
+        user.setUsername("testuser");
+    }
+
+    @Test
+    void issue_ShouldStoreOnlyTheDigestOfTheToken() {
+        // Given
+        when(jwtService.generateRefreshToken(user)).thenReturn("refresh-token");
+
+        // When
+        String refreshToken = refreshTokenService.issue(user);
+
+        // Then
+        ArgumentCaptor<RefreshTokenEntity> stored = ArgumentCaptor.forClass(RefreshTokenEntity.class);
+        verify(refreshTokenRepository).save(stored.capture());
+        assertEquals("refresh-token", refreshToken);
+        assertArrayEquals(TokenDigests.sha256("refresh-token"), stored.getValue().getTokenHash());
+        assertEquals(32, stored.getValue().getTokenHash().length);
+        assertSame(user, stored.getValue().getCredentials());
+        assertNotNull(stored.getValue().getFamilyId());
+        assertTrue(stored.getValue().getExpiresAt().isAfter(Instant.now()));
+    }
+
+    @Test
+    void issue_WithOpaqueFormat_ShouldIssueARandomTokenWithoutSigning() {
+        // Given
+        RefreshTokenServiceImpl opaqueService =
+                new RefreshTokenServiceImpl(refreshTokenRepository, jwtService, EXPIRATION, RefreshTokenServiceImpl.OPAQUE, GRACE_PERIOD);
+
+        // When
+        String first = opaqueService.issue(user);
+        String second = opaqueService.issue(user);
+
+        // Then
+        assertEquals(43, first.length());
+        assertNotEquals(first, second);
+        assertTrue(opaqueService.isValid(first, user));
+        verifyNoInteractions(jwtService);
+    }
+
+    @Test
+    void constructor_WithUnsupportedFormat_ShouldThrowIllegalArgumentException() {
+        // When/Then
+        assertThrows(IllegalArgumentException.class,
+                () -> new RefreshTokenServiceImpl(refreshTokenRepository, jwtService, EXPIRATION, "paseto", GRACE_PERIOD));
+    }
+
+    @Test
+    void find_ShouldLookUpByDigestAndIgnoreExpiredTokens() {
+        // Given
+        RefreshCredentials expired = new RefreshCredentials(1L, 1L, UUID.randomUUID(), Instant.now().minusSeconds(1), null, 0);
+        when(refreshTokenRepository.findCredentialsByTokenHash(TokenDigests.sha256("expired"))).thenReturn(Optional.of(expired));
+
+        // When/Then
+        assertTrue(refreshTokenService.find("expired").isEmpty());
+        assertTrue(refreshTokenService.find("unknown").isEmpty());
+    }
+
+    @Test
+    void rotate_ShouldMarkTheTokenOnItsVersionAndIssueOneOfTheSameFamily() {
+        // Given
+        UUID familyId = UUID.randomUUID();
+        RefreshCredentials current = new RefreshCredentials(7L, 1L, familyId, Instant.now().plusSeconds(60), null, 3);
+        when(jwtService.generateRefreshToken(user)).thenReturn("new-refresh-token");
+        when(refreshTokenRepository.markRotated(eq(7L), eq(3L), any(Instant.class), any(byte[].class))).thenReturn(1);
+
+        // When
+        String refreshToken = refreshTokenService.rotate("refresh-token", current, user);
+
+        // Then
+        ArgumentCaptor<RefreshTokenEntity> stored = ArgumentCaptor.forClass(RefreshTokenEntity.class);
+        verify(refreshTokenRepository).save(stored.capture());
+        assertEquals("new-refresh-token", refreshToken);
+        assertEquals(familyId, stored.getValue().getFamilyId());
+        verify(refreshTokenRepository, never()).deleteByTokenHash(any());
+    }
+
+    @Test
+    void rotate_WithinGracePeriod_ShouldReturnTheSuccessorWithoutIssuingAToken() {
+        // Given
+        RefreshCredentials current = new RefreshCredentials(7L, 1L, UUID.randomUUID(), Instant.now().plusSeconds(60),
+                Instant.now().minusSeconds(1), 4, refreshTokenService.seal("refresh-token", "successor-token"));
+
+        // When
+        String refreshToken = refreshTokenService.rotate("refresh-token", current, user);
+
+        // Then
+        assertEquals("successor-token", refreshToken);
+        verify(refreshTokenRepository, never()).save(any());
+        verify(refreshTokenRepository, never()).markRotated(any(), anyLong(), any(), any());
+        verify(refreshTokenRepository, never()).deleteFamily(any());
+    }
+
+    @Test
+    void rotate_WithAnotherToken_ShouldNotRevealTheSuccessor() {
+        // Given
+        RefreshCredentials current = new RefreshCredentials(7L, 1L, UUID.randomUUID(), Instant.now().plusSeconds(60),
+                Instant.now().minusSeconds(1), 4, refreshTokenService.seal("refresh-token", "successor-token"));
+
+        // When/Then
+        assertThrows(IllegalArgumentException.class, () -> refreshTokenService.rotate("forged-token", current, user));
+    }
+
+    @Test
+    void rotate_AfterGracePeriod_ShouldRevokeTheSessionAndThrowIllegalArgumentException() {
+        // Given
+        UUID familyId = UUID.randomUUID();
+        RefreshCredentials current = new RefreshCredentials(7L, 1L, familyId, Instant.now().plusSeconds(60),
+                Instant.now().minus(GRACE_PERIOD).minusSeconds(1), 4, refreshTokenService.seal("refresh-token", "successor-token"));
+
+        // When/Then
+        assertThrows(IllegalArgumentException.class, () -> refreshTokenService.rotate("refresh-token", current, user));
+        verify(refreshTokenRepository).deleteFamily(familyId);
+        verify(refreshTokenRepository, never()).save(any());
+    }
+
+    @Test
+    void rotate_Concurrently_ShouldLeaveASingleLiveSuccessor() throws Exception {
+        // Given
+        RefreshTokenServiceImpl opaqueService =
+                new RefreshTokenServiceImpl(refreshTokenRepository, jwtService, EXPIRATION, RefreshTokenServiceImpl.OPAQUE, GRACE_PERIOD);
+        UUID familyId = UUID.randomUUID();
+        Instant expiresAt = Instant.now().plusSeconds(60);
+        RefreshCredentials current = new RefreshCredentials(7L, 1L, familyId, expiresAt, null, 3);
+        byte[] currentHash = TokenDigests.sha256("refresh-token");
+        // In-memory refresh_tokens table: the live token digests and the rotated row, updated on its version
+        Set<String> live = ConcurrentHashMap.newKeySet();
+        AtomicReference<RefreshCredentials> row = new AtomicReference<>(current);
+        when(refreshTokenRepository.save(any())).thenAnswer(invocation -> {
+            live.add(Arrays.toString(invocation.<RefreshTokenEntity>getArgument(0).getTokenHash()));
+            return invocation.getArgument(0);
+        });
+        when(refreshTokenRepository.deleteByTokenHash(any())).thenAnswer(invocation ->
+                live.remove(Arrays.toString(invocation.<byte[]>getArgument(0))) ? 1 : 0);
+        when(refreshTokenRepository.markRotated(eq(7L), anyLong(), any(Instant.class), any(byte[].class))).thenAnswer(invocation -> {
+            RefreshCredentials read = row.get();
+            RefreshCredentials rotated = new RefreshCredentials(7L, 1L, familyId, expiresAt, invocation.getArgument(2),
+                    read.version() + 1, invocation.getArgument(3));
+            return read.version() == invocation.<Long>getArgument(1) && row.compareAndSet(read, rotated) ? 1 : 0;
+        });
+        when(refreshTokenRepository.findCredentialsByTokenHash(currentHash)).thenAnswer(invocation -> Optional.of(row.get()));
+
+        // When
+        int refreshes = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(refreshes)) {
+            for (int i = 0; i < refreshes; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return opaqueService.rotate("refresh-token", current, user);
+                }));
+            }
+            start.countDown();
+        }
+
+        // Then
+        Set<String> successors = new HashSet<>();
+        for (Future<String> result : results) {
+            successors.add(result.get());
+        }
+        assertEquals(1, successors.size());
+        assertEquals(Set.of(Arrays.toString(TokenDigests.sha256(successors.iterator().next()))), live);
+    }
+}
@@ -0,0 +1,165 @@
+package org.eduardomango.authmicroservice.services.impl;
+
+import org.eduardomango.authmicroservice.models.auth.InvalidationEvent;
+import org.eduardomango.authmicroservice.models.auth.VerifiedToken;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenRevocationIndexTest {
+
+    private static final long ACCESS_TOKEN_LIFETIME = 60_000L;
+
+    private final TokenRevocationIndex revocationIndex = new TokenRevocationIndex(ACCESS_TOKEN_LIFETIME, Duration.ofSeconds(1));
+
+    private static VerifiedToken token(String subject, Instant issuedAt, Instant expiresAt) {
+        return new VerifiedToken(subject, UUID.randomUUID(), issuedAt, expiresAt, List.of(), 0);
+    }
+
+    @Test
+    void revoke_ShouldRevokeOnlyThatToken() {
+        // Given
+        VerifiedToken revoked = token("testuser", Instant.now(), Instant.now().plusSeconds(60));
+        VerifiedToken other = token("testuser", Instant.now(), Instant.now().plusSeconds(60));
+
+        // When
+        revocationIndex.revoke(revoked);
+
+        // Then
+        assertTrue(revocationIndex.isRevoked(revoked));
+        assertFalse(revocationIndex.isRevoked(other));
+    }
+
+    @Test
+    void revokeSubject_ShouldRevokeOnlyTokensIssuedBefore() {
+        // Given
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        VerifiedToken before = token("testuser", now.minusSeconds(5), now.plusSeconds(60));
+        VerifiedToken otherUser = token("otheruser", now.minusSeconds(5), now.plusSeconds(60));
+
+        // When
+        revocationIndex.revokeSubject("testuser");
+
+        // Then
+        assertTrue(revocationIndex.isRevoked(before));
+        assertFalse(revocationIndex.isRevoked(token("testuser", now.plusSeconds(2), now.plusSeconds(60))));
+        assertFalse(revocationIndex.isRevoked(otherUser));
+    }
+
+    @Test
+    void revokeSubject_ShouldCompareTheIssueTimeToTheMillisecond() {
+        // Given
+        Instant revokedAt = Instant.now().truncatedTo(ChronoUnit.SECONDS).plusMillis(500);
+        VerifiedToken sameMillisecond = token("testuser", revokedAt, revokedAt.plusSeconds(60));
+        VerifiedToken nextMillisecond = token("testuser", revokedAt.plusMillis(1), revokedAt.plusSeconds(60));
+        // Tokens issued before they had iat_ms carry whole seconds, the whole second of the revocation is revoked
+        VerifiedToken sameSecondWithoutMillis = token("testuser", revokedAt.truncatedTo(ChronoUnit.SECONDS), revokedAt.plusSeconds(60));
+
+        // When
+        revocationIndex.revokeSubject("testuser", revokedAt);
+
+        // Then
+        assertTrue(revocationIndex.isRevoked(sameMillisecond));
+        assertFalse(revocationIndex.isRevoked(nextMillisecond));
+        assertTrue(revocationIndex.isRevoked(sameSecondWithoutMillis));
+    }
+
+    @Test
+    void revokeSubject_ReceivedTwice_ShouldKeepTheLatestRevocation() {
+        // Given
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        VerifiedToken token = token("testuser", now.minusSeconds(5), now.plusSeconds(60));
+
+        // When
+        revocationIndex.revokeSubject("testuser", now);
+        revocationIndex.revokeSubject("testuser", now.minusSeconds(10));
+
+        // Then
+        assertTrue(revocationIndex.isRevoked(token));
+        assertEquals(1, revocationIndex.size());
+    }
+
+    @Test
+    void onInvalidation_ShouldApplyTokenAndSubjectRevocations() {
+        // Given
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        VerifiedToken revoked = token("testuser", now.minusSeconds(5), now.plusSeconds(60));
+        VerifiedToken ofSubject = token("otheruser", now.minusSeconds(5), now.plusSeconds(60));
+
+        // When
+        revocationIndex.onInvalidation(InvalidationEvent.token(revoked));
+        revocationIndex.onInvalidation(InvalidationEvent.subject("otheruser", now));
+        revocationIndex.onInvalidation(InvalidationEvent.referenceData());
+
+        // Then
+        assertTrue(revocationIndex.isRevoked(revoked));
+        assertTrue(revocationIndex.isRevoked(ofSubject));
+        assertEquals(2, revocationIndex.size());
+    }
+
+    @Test
+    void onInvalidation_OfExpiredTokens_ShouldKeepNothing() {
+        // Given
+        Instant longAgo = Instant.now().minus(Duration.ofDays(1));
+
+        // When
+        revocationIndex.onInvalidation(InvalidationEvent.token(token("testuser", longAgo, longAgo.plusSeconds(60))));
+        revocationIndex.onInvalidation(InvalidationEvent.subject("testuser", longAgo));
+
+        // Then
+        assertEquals(0, revocationIndex.size());
+    }
+
+    @Test
+    void expire_ShouldKeepRevocationsOfLiveTokens() {
+        // Given
+        VerifiedToken revoked = token("testuser", Instant.now(), Instant.now().plusSeconds(60));
+        revocationIndex.revoke(revoked);
+
+        // When
+        revocationIndex.expire();
+
+        // Then
+        assertTrue(revocationIndex.isRevoked(revoked));
+        assertEquals(1, revocationIndex.size());
+    }
+
+    @Test
+    void timingWheel_ShouldExpireItemsAtTheirDeadlineAcrossLevels() {
+        // Given
+        long start = 1_000_000L;
+        TimingWheel<Long> wheel = new TimingWheel<>(1000, start);
+        long[] delays = {1, 63, 64, 65, 4095, 4096, 300_000, 20_000_000};
+        for (long delay : delays) {
+            wheel.schedule(delay, start + delay * 1000);
+        }
+        List<Long> expired = new ArrayList<>();
+
+        // When/Then
+        for (long delay : delays) {
+            wheel.advance(start + (delay - 1) * 1000, expired::add);
+            assertFalse(expired.contains(delay), "expired early: " + delay);
+            wheel.advance(start + delay * 1000, expired::add);
+            assertTrue(expired.contains(delay), "not expired: " + delay);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void timingWheel_ShouldNotScheduleDeadlinesInThePast() {
+        // Given
+        TimingWheel<String> wheel = new TimingWheel<>(1000, 10_000);
+
+        // When/Then
+        assertFalse(wheel.schedule("past", 9_000));
+        assertTrue(wheel.schedule("future", 12_000));
+        assertEquals(1, wheel.size());
+    }
+}